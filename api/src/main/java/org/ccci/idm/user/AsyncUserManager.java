@@ -0,0 +1,77 @@
+package org.ccci.idm.user;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An asynchronous facade for a {@link UserManager}. All methods return immediately with a {@link CompletableFuture}
+ * that is completed once the underlying blocking operation finishes. Any exception thrown by the underlying operation
+ * is used to complete the future exceptionally.
+ */
+public interface AsyncUserManager {
+    /**
+     * @return the blocking {@link UserManager} backing this AsyncUserManager
+     */
+    @Nonnull
+    UserManager getUserManager();
+
+    // region Find methods
+
+    @Nonnull
+    CompletableFuture<User> findUserByEmail(String email, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findUserByRelayGuid(String guid, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findUserByTheKeyGuid(String guid, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findUserByFacebookId(String id, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findUserByDesignation(@Nullable String designation, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findUserByEmployeeId(String employeeId, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<Map<String, User>> findAllByTheKeyGuids(@Nonnull Collection<String> guids,
+                                                              boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<Map<String, User>> findAllByEmails(@Nonnull Collection<String> emails,
+                                                         boolean includeDeactivated);
+
+    // endregion Find methods
+
+    // region CRUD methods
+
+    @Nonnull
+    CompletableFuture<Void> createUser(@Nonnull User user);
+
+    @Nonnull
+    CompletableFuture<Void> updateUser(@Nonnull User user, User.Attr... attrs);
+
+    // endregion CRUD methods
+
+    // region Group methods
+
+    @Nonnull
+    CompletableFuture<Void> addToGroup(@Nonnull User user, @Nonnull Group group, boolean addSecurity);
+
+    @Nonnull
+    CompletableFuture<Void> removeFromGroup(@Nonnull User user, @Nonnull Group group);
+
+    @Nonnull
+    CompletableFuture<Group> getGroup(@Nullable String id);
+
+    @Nonnull
+    CompletableFuture<List<Group>> getAllGroups(@Nullable String baseSearch);
+
+    // endregion Group methods
+}
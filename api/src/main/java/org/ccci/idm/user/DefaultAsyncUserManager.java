@@ -0,0 +1,197 @@
+package org.ccci.idm.user;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link AsyncUserManager} that runs the blocking {@link UserManager} operations on a bounded {@link Executor}. By
+ * default a fixed size thread pool with a bounded work queue is used, once the queue is full new operations will fail
+ * with a {@link RejectedExecutionException}.
+ */
+public class DefaultAsyncUserManager implements AsyncUserManager, AutoCloseable {
+    private static final int DEFAULT_THREADS = 16;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    @Nonnull
+    private final UserManager userManager;
+    @Nonnull
+    private final Executor executor;
+    // the executor service we created and are responsible for shutting down
+    @Nullable
+    private final ExecutorService ownedExecutor;
+
+    public DefaultAsyncUserManager(@Nonnull final UserManager userManager) {
+        this(userManager, DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public DefaultAsyncUserManager(@Nonnull final UserManager userManager, final int threads,
+                                   final int queueCapacity) {
+        this.userManager = userManager;
+        ownedExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("AsyncUserManager-%d").setDaemon(true).build());
+        executor = ownedExecutor;
+    }
+
+    public DefaultAsyncUserManager(@Nonnull final UserManager userManager, @Nonnull final Executor executor) {
+        this.userManager = userManager;
+        this.executor = executor;
+        ownedExecutor = null;
+    }
+
+    @Nonnull
+    @Override
+    public UserManager getUserManager() {
+        return userManager;
+    }
+
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    // region Find methods
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findUserByEmail(final String email, final boolean includeDeactivated) {
+        return supply(() -> userManager.findUserByEmail(email, includeDeactivated));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findUserByRelayGuid(final String guid, final boolean includeDeactivated) {
+        return supply(() -> userManager.findUserByRelayGuid(guid, includeDeactivated));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findUserByTheKeyGuid(final String guid, final boolean includeDeactivated) {
+        return supply(() -> userManager.findUserByTheKeyGuid(guid, includeDeactivated));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findUserByFacebookId(final String id, final boolean includeDeactivated) {
+        return supply(() -> userManager.findUserByFacebookId(id, includeDeactivated));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findUserByDesignation(@Nullable final String designation,
+                                                         final boolean includeDeactivated) {
+        return supply(() -> userManager.findUserByDesignation(designation, includeDeactivated));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findUserByEmployeeId(final String employeeId, final boolean includeDeactivated) {
+        return supply(() -> userManager.findUserByEmployeeId(employeeId, includeDeactivated));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Map<String, User>> findAllByTheKeyGuids(@Nonnull final Collection<String> guids,
+                                                                     final boolean includeDeactivated) {
+        return supply(() -> userManager.findAllByTheKeyGuids(guids, includeDeactivated));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Map<String, User>> findAllByEmails(@Nonnull final Collection<String> emails,
+                                                                final boolean includeDeactivated) {
+        return supply(() -> userManager.findAllByEmails(emails, includeDeactivated));
+    }
+
+    // endregion Find methods
+
+    // region CRUD methods
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> createUser(@Nonnull final User user) {
+        return run(() -> userManager.createUser(user));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> updateUser(@Nonnull final User user, final User.Attr... attrs) {
+        return run(() -> userManager.updateUser(user, attrs));
+    }
+
+    // endregion CRUD methods
+
+    // region Group methods
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> addToGroup(@Nonnull final User user, @Nonnull final Group group,
+                                              final boolean addSecurity) {
+        return run(() -> userManager.addToGroup(user, group, addSecurity));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> removeFromGroup(@Nonnull final User user, @Nonnull final Group group) {
+        return run(() -> userManager.removeFromGroup(user, group));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Group> getGroup(@Nullable final String id) {
+        return supply(() -> userManager.getGroup(id));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<List<Group>> getAllGroups(@Nullable final String baseSearch) {
+        return supply(() -> userManager.getAllGroups(baseSearch));
+    }
+
+    // endregion Group methods
+
+    @Nonnull
+    private CompletableFuture<Void> run(@Nonnull final Operation operation) {
+        return supply(() -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    @Nonnull
+    private <T> CompletableFuture<T> supply(@Nonnull final Callable<T> operation) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(operation.call());
+                } catch (final Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void run() throws Exception;
+    }
+}
@@ -39,12 +39,14 @@
 import org.ccci.idm.user.query.Expression;
 import org.ccci.idm.user.util.DefaultRandomPasswordGenerator;
 import org.ccci.idm.user.util.RandomPasswordGenerator;
+import org.ccci.idm.user.util.UniquenessCache;
 import org.ccci.idm.user.util.UserUtil;
 import org.joda.time.Duration;
 import org.joda.time.Instant;
 import org.joda.time.Period;
 import org.joda.time.ReadableDuration;
 import org.joda.time.ReadableInstant;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -54,8 +56,13 @@
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.stream.Stream;
@@ -82,6 +89,9 @@ public class DefaultUserManager implements UserManager {
     @NotNull
     protected UserDao userDao;
 
+    @Nullable
+    private UniquenessCache uniquenessCache;
+
     public void setMfaIntruderAttempts(final int attempts) {
         mfaIntruderAttempts = attempts;
     }
@@ -114,6 +124,10 @@ public void setUserDao(final UserDao dao) {
         this.userDao = dao;
     }
 
+    public void setUniquenessCache(@Nullable final UniquenessCache cache) {
+        uniquenessCache = cache;
+    }
+
     @Override
     public boolean isReadOnly() {
         return this.userDao.isReadOnly();
@@ -149,6 +163,9 @@ public void createUser(final User user) throws DaoException, UserException {
 
         // Save the user
         this.userDao.save(user);
+        if (uniquenessCache != null) {
+            uniquenessCache.markPresent(user);
+        }
 
         // trigger any post create listeners
         for (final UserManagerListener listener : listeners) {
@@ -163,17 +180,24 @@ protected void validateNewUser(final User user) throws UserException {
         validateUsDesignation(user);
         validateUsEmployeeId(user);
 
+        // find any unique identifiers already in use with a single lookup
+        final Map<UniqueIdentifier, String> identifiers = new EnumMap<>(UniqueIdentifier.class);
+        identifiers.put(UniqueIdentifier.EMAIL, user.getEmail());
+        identifiers.put(UniqueIdentifier.RELAY_GUID, user.getRawRelayGuid());
+        identifiers.put(UniqueIdentifier.THEKEY_GUID, user.getRawTheKeyGuid());
+        final Set<UniqueIdentifier> existing = findExistingNewUserIdentifiers(identifiers);
+
         // throw an error if a user already exists for this email
-        if (this.doesEmailExist(user.getEmail())) {
+        if (existing.contains(UniqueIdentifier.EMAIL)) {
             LOG.debug("The specified email '{}' already exists.", user.getEmail());
             throw new EmailAlreadyExistsException();
         }
 
         // throw an error if the raw Relay or The Key guid exists already
-        if (user.getRawRelayGuid() != null && this.doesRelayGuidExist(user.getRawRelayGuid())) {
+        if (existing.contains(UniqueIdentifier.RELAY_GUID)) {
             throw new RelayGuidAlreadyExistsException("Relay guid '" + user.getRawRelayGuid() + "' already exists");
         }
-        if (user.getRawTheKeyGuid() != null && this.doesTheKeyGuidExist(user.getRawTheKeyGuid())) {
+        if (existing.contains(UniqueIdentifier.THEKEY_GUID)) {
             throw new TheKeyGuidAlreadyExistsException("The Key guid '" + user.getRawTheKeyGuid() + "' already exists");
         }
     }
@@ -181,13 +205,13 @@ protected void validateNewUser(final User user) throws UserException {
     protected void setNewUserDefaults(final User user) throws UserException {
         // generate a guid for the user if there isn't a valid one already set
         int count = 0;
-        while (!UserUtil.isValidGuid(user.getGuid()) || doesGuidExist(user.getGuid()) ||
-                !UserUtil.isValidGuid(user.getRelayGuid()) || doesRelayGuidExist(user.getRelayGuid()) ||
-                !UserUtil.isValidGuid(user.getTheKeyGuid()) || doesTheKeyGuidExist(user.getTheKeyGuid())) {
+        boolean generated = false;
+        while (!areNewUserGuidsAvailable(user, generated)) {
             final String guid = UUID.randomUUID().toString().toUpperCase(Locale.US);
             user.setGuid(guid);
             user.setTheKeyGuid(guid);
             user.setRelayGuid(guid);
+            generated = true;
 
             // prevent an infinite loop, I doubt this exception will ever be thrown
             if (count++ > 200) {
@@ -201,6 +225,48 @@ protected void setNewUserDefaults(final User user) throws UserException {
         }
     }
 
+    private boolean areNewUserGuidsAvailable(final User user, final boolean generated) {
+        if (!UserUtil.isValidGuid(user.getGuid()) || !UserUtil.isValidGuid(user.getRelayGuid()) ||
+                !UserUtil.isValidGuid(user.getTheKeyGuid())) {
+            return false;
+        }
+
+        // a freshly generated guid that was never seen by the uniqueness filter can't exist yet
+        if (generated && uniquenessCache != null && uniquenessCache.isGeneratedGuidAvailable(user.getGuid())) {
+            return true;
+        }
+
+        final Map<UniqueIdentifier, String> identifiers = new EnumMap<>(UniqueIdentifier.class);
+        identifiers.put(UniqueIdentifier.GUID, user.getGuid());
+        identifiers.put(UniqueIdentifier.RELAY_GUID, user.getRelayGuid());
+        identifiers.put(UniqueIdentifier.THEKEY_GUID, user.getTheKeyGuid());
+        return findExistingNewUserIdentifiers(identifiers).isEmpty();
+    }
+
+    /**
+     * Find which of the specified identifiers of a new user are already in use, using a single
+     * {@link UserDao#findExistingIdentifiers(Map)} lookup. This is the extension point for subclasses customizing the
+     * uniqueness checks for new users.
+     *
+     * @param identifiers the identifiers to check, null values are ignored
+     * @return the identifiers that are already in use
+     */
+    @Nonnull
+    protected Set<UniqueIdentifier> findExistingNewUserIdentifiers(final Map<UniqueIdentifier, String> identifiers) {
+        // emails and supplied identifiers may have been created elsewhere at any time, always confirm with the dao
+        final Map<UniqueIdentifier, String> values = new EnumMap<>(UniqueIdentifier.class);
+        identifiers.forEach((type, value) -> {
+            if (value != null) {
+                values.put(type, value);
+            }
+        });
+
+        if (values.isEmpty()) {
+            return EnumSet.noneOf(UniqueIdentifier.class);
+        }
+        return userDao.findExistingIdentifiers(values);
+    }
+
     @Override
     @Audit(action = AUDIT_ACTION_UPDATE_USER, actionResolverName = AUDIT_ACTION_RESOLVER_USER_MANAGER,
             resourceResolverName = AUDIT_RESOURCE_RESOLVER_UPDATE_USER)
@@ -411,6 +477,20 @@ public User findUserByEmployeeId(final String employeeId, final boolean includeD
         return this.userDao.findByEmployeeId(employeeId, includeDeactivated);
     }
 
+    @Nonnull
+    @Override
+    public Map<String, User> findAllByTheKeyGuids(@Nonnull final Collection<String> guids,
+                                                  final boolean includeDeactivated) {
+        return this.userDao.findAllByTheKeyGuids(guids, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, User> findAllByEmails(@Nonnull final Collection<String> emails,
+                                             final boolean includeDeactivated) {
+        return this.userDao.findAllByEmails(emails, includeDeactivated);
+    }
+
     @Beta
     @Nonnull
     @Override
@@ -465,12 +545,24 @@ public Stream<User> streamUsers(@Nullable final Expression expression, final boo
         return userDao.streamUsers(expression, includeDeactivated, restrictMaxAllowed);
     }
 
+    @Override
+    public Stream<User> streamUsers(@Nullable final Expression expression, final boolean includeDeactivated,
+                                    @Nonnull final Set<User.Attr> projection) {
+        return userDao.streamUsers(expression, includeDeactivated, projection);
+    }
+
     @Override
     public Stream<User> streamUsersInGroup(@Nonnull final Group group, @Nullable final Expression expression,
                                            final boolean includeDeactivated) {
         return userDao.streamUsersInGroup(group, expression, includeDeactivated, true);
     }
 
+    @Nonnull
+    @Override
+    public Publisher<User> publishUsers(@Nullable final Expression expression, final boolean includeDeactivated) {
+        return userDao.publishUsers(expression, includeDeactivated);
+    }
+
     @Override
     @Audit(action = AUDIT_ACTION_ADD_TO_GROUP, actionResolverName = AUDIT_ACTION_RESOLVER_USER_MANAGER,
             resourceResolverName = AUDIT_RESOURCE_RESOLVER_ADD_TO_GROUP)
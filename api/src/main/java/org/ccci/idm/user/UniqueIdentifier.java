@@ -0,0 +1,8 @@
+package org.ccci.idm.user;
+
+/**
+ * The identifiers that have to be unique across all users.
+ */
+public enum UniqueIdentifier {
+    EMAIL, GUID, RELAY_GUID, THEKEY_GUID
+}
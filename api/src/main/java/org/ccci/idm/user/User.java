@@ -17,12 +17,15 @@
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 public class User implements Cloneable, Serializable {
     private static final long serialVersionUID = -1174980195690210236L;
@@ -60,6 +63,9 @@ public enum Attr {
     // Multi-value attributes
     private final Set<String> domainsVisited = new HashSet<>();
     private final Set<Group> groups = new HashSet<>();
+    // groups that have not been resolved yet, they will be resolved on first access of the groups
+    @Nullable
+    private transient volatile Supplier<? extends Collection<Group>> lazyGroups;
 
     // self-service verification keys
     private String signupKey = null;
@@ -152,7 +158,7 @@ protected User(final User source) {
         mfaIntruderResetTime = source.mfaIntruderResetTime;
 
         this.domainsVisited.addAll(source.domainsVisited);
-        this.groups.addAll(source.groups);
+        this.groups.addAll(source.groups());
 
         this.signupKey = source.signupKey;
         this.changeEmailKey = source.changeEmailKey;
@@ -608,9 +614,27 @@ public void addDomainsVisited(final String domain) {
      * @param groups the groups to set
      */
     public void setGroups(final Collection<Group> groups) {
-        this.groups.clear();
-        if (groups != null) {
-            this.groups.addAll(groups);
+        synchronized (this.groups) {
+            this.lazyGroups = null;
+            this.groups.clear();
+            if (groups != null) {
+                this.groups.addAll(groups);
+            }
+        }
+    }
+
+    /**
+     * Set the groups using a Supplier that is only invoked the first time the groups are accessed. This allows
+     * expensive group resolution to be skipped for users whose groups are never read.
+     *
+     * This method is for use by UserDao &amp; UserManager implementations only and is not meant for public use.
+     *
+     * @param groups the Supplier of the groups to set
+     */
+    public void setLazyGroups(@Nonnull final Supplier<? extends Collection<Group>> groups) {
+        synchronized (this.groups) {
+            this.groups.clear();
+            this.lazyGroups = groups;
         }
     }
 
@@ -618,7 +642,24 @@ public void setGroups(final Collection<Group> groups) {
      * @return the groupMembership
      */
     public Set<Group> getGroups() {
-        return Collections.unmodifiableSet(this.groups);
+        return Collections.unmodifiableSet(groups());
+    }
+
+    @Nonnull
+    private Set<Group> groups() {
+        if (lazyGroups != null) {
+            synchronized (groups) {
+                final Supplier<? extends Collection<Group>> pending = lazyGroups;
+                if (pending != null) {
+                    final Collection<Group> resolved = pending.get();
+                    if (resolved != null) {
+                        groups.addAll(resolved);
+                    }
+                    lazyGroups = null;
+                }
+            }
+        }
+        return groups;
     }
 
     public String getSignupKey() {
@@ -838,6 +879,12 @@ public Serializable setImplMeta(@Nonnull final String key, @Nullable final Seria
         return this.implMeta.put(key, obj);
     }
 
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        // resolve any lazy groups before serializing
+        groups();
+        out.defaultWriteObject();
+    }
+
     @Override
     @SuppressWarnings({"CloneDoesntCallSuperClone", "CloneDoesntDeclareCloneNotSupportedException"})
     public User clone() {
@@ -861,7 +908,7 @@ public String toString() {
                 .add("loginDisabled", loginDisabled)
                 .add("locked", locked)
                 .add("domainsVisited", domainsVisited)
-                .add("groups", groups)
+                .add("groups", groups())
                 .add("signupKey", signupKey)
                 .add("changeEmailKey", changeEmailKey)
                 .add("resetPasswordKey", resetPasswordKey)
@@ -911,7 +958,7 @@ public int hashCode() {
                 loginDisabled,
                 locked,
                 domainsVisited,
-                groups,
+                groups(),
                 signupKey,
                 changeEmailKey,
                 resetPasswordKey,
@@ -971,7 +1018,7 @@ public boolean equals(final Object obj) {
                 Objects.equal(this.loginDisabled, other.loginDisabled) &&
                 Objects.equal(this.locked, other.locked) &&
                 Objects.equal(this.domainsVisited, other.domainsVisited) &&
-                Objects.equal(this.groups, other.groups) &&
+                Objects.equal(this.groups(), other.groups()) &&
                 Objects.equal(this.signupKey, other.signupKey) &&
                 Objects.equal(this.changeEmailKey, other.changeEmailKey) &&
                 Objects.equal(this.resetPasswordKey, other.resetPasswordKey) &&
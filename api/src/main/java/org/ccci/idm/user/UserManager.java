@@ -8,10 +8,14 @@
 import org.ccci.idm.user.exception.UserException;
 import org.ccci.idm.user.exception.UserNotFoundException;
 import org.ccci.idm.user.query.Expression;
+import org.reactivestreams.Publisher;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.stream.Stream;
 
@@ -220,6 +224,38 @@ default User findUserByGuid(String guid) {
      */
     User findUserByEmployeeId(String employeeId, boolean includeDeactivated);
 
+    /**
+     * Locate all users with the specified The Key guids. Deactivated accounts are included in the search.
+     *
+     * @param guids The Key guids of the users to find.
+     * @return a map of the requested guids to the found {@link User}s, guids without a matching user are not included.
+     */
+    @Nonnull
+    default Map<String, User> findAllByTheKeyGuids(@Nonnull Collection<String> guids) {
+        return findAllByTheKeyGuids(guids, true);
+    }
+
+    /**
+     * Locate all users with the specified The Key guids.
+     *
+     * @param guids              The Key guids of the users to find.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @return a map of the requested guids to the found {@link User}s, guids without a matching user are not included.
+     */
+    @Nonnull
+    Map<String, User> findAllByTheKeyGuids(@Nonnull Collection<String> guids, boolean includeDeactivated);
+
+    /**
+     * Locate all users with the specified e-mail addresses.
+     *
+     * @param emails             e-mail addresses of the users to find.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @return a map of the requested e-mail addresses to the found {@link User}s, e-mail addresses without a matching
+     * user are not included.
+     */
+    @Nonnull
+    Map<String, User> findAllByEmails(@Nonnull Collection<String> emails, boolean includeDeactivated);
+
     /**
      * Find all users matching the search query.
      *
@@ -330,8 +366,33 @@ default Stream<User> streamUsers(boolean includeDeactivated) {
      */
     Stream<User> streamUsers(@Nullable Expression expression, boolean includeDeactivated, boolean restrictMaxAllowed);
 
+    /**
+     * Provide a Java 8 Stream over all the users that match the specified expression, only loading the requested
+     * attributes. The identifying attributes (email, deactivated flag & guids) are always loaded, any attribute not in
+     * the projection may be left unpopulated. This stream needs to be closed after use.
+     *
+     * @param expression         The search expression
+     * @param includeDeactivated Whether deactivated users should be included in the Stream
+     * @param projection         The user attributes to load
+     * @return a Stream of all users
+     */
+    Stream<User> streamUsers(@Nullable Expression expression, boolean includeDeactivated,
+                             @Nonnull Set<User.Attr> projection);
+
     Stream<User> streamUsersInGroup(@Nonnull Group group, @Nullable Expression expression, boolean includeDeactivated);
 
+    /**
+     * Provide a Reactive Streams Publisher of all the users that match the specified expression. Users are only loaded
+     * as the subscriber requests them, and the underlying search is closed when the subscription completes or is
+     * cancelled.
+     *
+     * @param expression         The search expression
+     * @param includeDeactivated Whether deactivated users should be included
+     * @return a Publisher of all matching users
+     */
+    @Nonnull
+    Publisher<User> publishUsers(@Nullable Expression expression, boolean includeDeactivated);
+
     /**
      * Add user to group
      *
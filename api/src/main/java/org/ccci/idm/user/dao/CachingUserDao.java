@@ -0,0 +1,585 @@
+package org.ccci.idm.user.dao;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.ccci.idm.user.Group;
+import org.ccci.idm.user.SearchQuery;
+import org.ccci.idm.user.UniqueIdentifier;
+import org.ccci.idm.user.User;
+import org.ccci.idm.user.dao.exception.DaoException;
+import org.ccci.idm.user.dao.exception.ExceededMaximumAllowedResultsException;
+import org.ccci.idm.user.query.Expression;
+import org.joda.time.Duration;
+import org.joda.time.ReadableDuration;
+import org.reactivestreams.Publisher;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * A {@link UserDao} decorator that caches the results of single user lookups. Cached entries are evicted once they
+ * exceed the configured time to live or the cache grows beyond its maximum size. Any write passing through this
+ * decorator will invalidate all cached entries for the affected user.
+ *
+ * Only successful lookups are cached, a lookup that didn't find a user will always be passed through to the underlying
+ * UserDao.
+ */
+public class CachingUserDao implements UserDao {
+    private static final long DEFAULT_MAXIMUM_SIZE = 10000;
+    private static final ReadableDuration DEFAULT_EXPIRE_AFTER_WRITE = Duration.standardMinutes(5);
+
+    private enum Lookup {THEKEY_GUID, RELAY_GUID, EMAIL, EMPLOYEE_ID, DESIGNATION}
+
+    // thrown by the cache loader when the user doesn't exist, misses aren't cached
+    private static final UserNotCachedException NOT_FOUND = new UserNotCachedException();
+
+    @Nonnull
+    private final UserDao dao;
+
+    @Nonnull
+    private final Cache<Key, User> cache;
+    // index of cache keys by the TheKey guid of the cached user, used for invalidating all entries for a user
+    @Nonnull
+    private final ConcurrentMap<String, Set<Key>> keysByTheKeyGuid = new ConcurrentHashMap<>();
+    // the generation in which each user was last invalidated, used to discard users loaded before an invalidation
+    @Nonnull
+    private final Cache<String, Long> invalidatedGeneration;
+    @Nonnull
+    private final AtomicLong generation = new AtomicLong();
+
+    public CachingUserDao(@Nonnull final UserDao dao) {
+        this(dao, DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRE_AFTER_WRITE);
+    }
+
+    public CachingUserDao(@Nonnull final UserDao dao, final long maximumSize,
+                          @Nonnull final ReadableDuration expireAfterWrite) {
+        this.dao = dao;
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite.getMillis(), TimeUnit.MILLISECONDS)
+                .removalListener(this::onRemoval)
+                .build();
+        invalidatedGeneration = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite.getMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Nonnull
+    public UserDao getDao() {
+        return dao;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return dao.isReadOnly();
+    }
+
+    // region Cached lookups
+
+    @Override
+    public User findByEmail(final String email, final boolean includeDeactivated) {
+        return find(Lookup.EMAIL, email, includeDeactivated, () -> dao.findByEmail(email, includeDeactivated));
+    }
+
+    @Override
+    public User findByRelayGuid(final String guid, final boolean includeDeactivated) {
+        return find(Lookup.RELAY_GUID, guid, includeDeactivated, () -> dao.findByRelayGuid(guid, includeDeactivated));
+    }
+
+    @Nullable
+    @Override
+    public User findByTheKeyGuid(final String guid, final boolean includeDeactivated) {
+        return find(Lookup.THEKEY_GUID, guid, includeDeactivated,
+                () -> dao.findByTheKeyGuid(guid, includeDeactivated));
+    }
+
+    @Nullable
+    @Override
+    public User findByDesignation(@Nullable final String designation, final boolean includeDeactivated) {
+        return find(Lookup.DESIGNATION, designation, includeDeactivated,
+                () -> dao.findByDesignation(designation, includeDeactivated));
+    }
+
+    @Override
+    public User findByEmployeeId(final String employeeId, final boolean includeDeactivated) {
+        return find(Lookup.EMPLOYEE_ID, employeeId, includeDeactivated,
+                () -> dao.findByEmployeeId(employeeId, includeDeactivated));
+    }
+
+    @Nullable
+    private User find(@Nonnull final Lookup lookup, @Nullable final String value, final boolean includeDeactivated,
+                      @Nonnull final Supplier<User> loader) {
+        if (value == null) {
+            return loader.get();
+        }
+
+        // return a copy of the cached user, loading it if necessary. concurrent misses for the same key share a load
+        final Key key = new Key(lookup, value, includeDeactivated);
+        final long start = generation.get();
+        final User user;
+        try {
+            user = cache.get(key, () -> {
+                final User loaded = loader.get();
+                if (loaded == null || loaded.getTheKeyGuid() == null) {
+                    throw NOT_FOUND;
+                }
+                index(key, loaded);
+                return loaded.clone();
+            });
+        } catch (final ExecutionException e) {
+            return e.getCause() == NOT_FOUND ? null : propagate(e.getCause());
+        } catch (final UncheckedExecutionException e) {
+            return propagate(e.getCause());
+        }
+
+        discardIfStale(key, user, start);
+        return user.clone();
+    }
+
+    private static User propagate(final Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IllegalStateException(cause);
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, User> findAllByTheKeyGuids(@Nonnull final Collection<String> guids,
+                                                  final boolean includeDeactivated) {
+        return findAll(Lookup.THEKEY_GUID, guids, includeDeactivated,
+                misses -> dao.findAllByTheKeyGuids(misses, includeDeactivated));
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, User> findAllByEmails(@Nonnull final Collection<String> emails,
+                                             final boolean includeDeactivated) {
+        return findAll(Lookup.EMAIL, emails, includeDeactivated,
+                misses -> dao.findAllByEmails(misses, includeDeactivated));
+    }
+
+    @Nonnull
+    private Map<String, User> findAll(@Nonnull final Lookup lookup, @Nonnull final Collection<String> values,
+                                      final boolean includeDeactivated,
+                                      @Nonnull final Function<Collection<String>, Map<String, User>> loader) {
+        // return cached users where possible
+        final Map<String, User> users = new LinkedHashMap<>();
+        final Set<String> misses = new LinkedHashSet<>();
+        for (final String value : values) {
+            if (value == null) {
+                continue;
+            }
+            final User cached = cache.getIfPresent(new Key(lookup, value, includeDeactivated));
+            if (cached != null) {
+                users.put(value, cached.clone());
+            } else {
+                misses.add(value);
+            }
+        }
+
+        // batch load & cache any users that weren't already cached
+        if (!misses.isEmpty()) {
+            final long start = generation.get();
+            loader.apply(misses).forEach((value, user) -> {
+                cache(new Key(lookup, value, includeDeactivated), user, start);
+                users.put(value, user);
+            });
+        }
+        return users;
+    }
+
+    private void cache(@Nonnull final Key key, @Nullable final User user, final long start) {
+        if (user != null && user.getTheKeyGuid() != null) {
+            index(key, user);
+            cache.put(key, user.clone());
+            discardIfStale(key, user, start);
+        }
+    }
+
+    private void index(@Nonnull final Key key, @Nonnull final User user) {
+        keysByTheKeyGuid.computeIfAbsent(user.getTheKeyGuid(), k -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+
+    // the key is indexed before the user is cached and the invalidation generation is checked after, so either this
+    // check sees a concurrent invalidation or the invalidation sees the cached entry.
+    private void discardIfStale(@Nonnull final Key key, @Nonnull final User user, final long start) {
+        final Long invalidated = invalidatedGeneration.getIfPresent(user.getTheKeyGuid());
+        if (invalidated != null && invalidated > start) {
+            cache.invalidate(key);
+        }
+    }
+
+    // endregion Cached lookups
+
+    // region Cache invalidation
+
+    /**
+     * Invalidate all cached entries for the specified user.
+     *
+     * @param user the user to invalidate cached entries for
+     */
+    public void invalidate(@Nullable final User user) {
+        if (user == null) {
+            return;
+        }
+
+        // invalidate everything cached for this user
+        final String theKeyGuid = user.getTheKeyGuid();
+        if (theKeyGuid != null) {
+            invalidatedGeneration.put(theKeyGuid, generation.incrementAndGet());
+            final Set<Key> keys = keysByTheKeyGuid.remove(theKeyGuid);
+            if (keys != null) {
+                cache.invalidateAll(keys);
+            }
+        }
+
+        // invalidate any entries for the current identifiers of this user, they may be cached for a different user
+        for (final boolean includeDeactivated : new boolean[]{true, false}) {
+            invalidate(Lookup.THEKEY_GUID, theKeyGuid, includeDeactivated);
+            invalidate(Lookup.RELAY_GUID, user.getRelayGuid(), includeDeactivated);
+            invalidate(Lookup.EMAIL, user.getEmail(), includeDeactivated);
+            invalidate(Lookup.EMPLOYEE_ID, user.getEmployeeId(), includeDeactivated);
+            invalidate(Lookup.DESIGNATION, user.getCruDesignation(), includeDeactivated);
+        }
+    }
+
+    private void invalidate(@Nonnull final Lookup lookup, @Nullable final String value,
+                            final boolean includeDeactivated) {
+        if (value != null) {
+            cache.invalidate(new Key(lookup, value, includeDeactivated));
+        }
+    }
+
+    /**
+     * Invalidate all cached entries.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+        keysByTheKeyGuid.clear();
+    }
+
+    private void onRemoval(@Nonnull final RemovalNotification<Key, User> notification) {
+        final User user = notification.getValue();
+        final Key key = notification.getKey();
+        // a replaced entry is still cached under the same key
+        if (user == null || key == null || user.getTheKeyGuid() == null
+                || notification.getCause() == RemovalCause.REPLACED) {
+            return;
+        }
+
+        keysByTheKeyGuid.computeIfPresent(user.getTheKeyGuid(), (guid, keys) -> {
+            // the key may have been cached again since this entry was removed
+            if (!cache.asMap().containsKey(key)) {
+                keys.remove(key);
+            }
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    @VisibleForTesting
+    long size() {
+        cache.cleanUp();
+        return cache.size();
+    }
+
+    // endregion Cache invalidation
+
+    // region Write operations
+
+    @Override
+    public void save(@Nonnull final User user) throws DaoException {
+        try {
+            dao.save(user);
+        } finally {
+            invalidate(user);
+        }
+    }
+
+    @Override
+    public void update(@Nonnull final User user, final User.Attr... attrs) throws DaoException {
+        try {
+            dao.update(user, attrs);
+        } finally {
+            invalidate(user);
+        }
+    }
+
+    @Override
+    public void update(@Nonnull final User original, @Nonnull final User user, final User.Attr... attrs)
+            throws DaoException {
+        try {
+            dao.update(original, user, attrs);
+        } finally {
+            invalidate(original);
+            invalidate(user);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Map<Integer, DaoException> updateAll(@Nonnull final List<User> users, final User.Attr... attrs) {
+        try {
+            return dao.updateAll(users, attrs);
+        } finally {
+            users.forEach(this::invalidate);
+        }
+    }
+
+    @Override
+    public void deactivate(@Nonnull final User user) throws DaoException {
+        final User original = user.clone();
+        try {
+            dao.deactivate(user);
+        } finally {
+            invalidate(original);
+            invalidate(user);
+        }
+    }
+
+    @Override
+    public void reactivate(@Nonnull final User user) {
+        final User original = user.clone();
+        try {
+            dao.reactivate(user);
+        } finally {
+            invalidate(original);
+            invalidate(user);
+        }
+    }
+
+    @Override
+    public void addToGroup(@Nonnull final User user, @Nonnull final Group group) throws DaoException {
+        try {
+            dao.addToGroup(user, group);
+        } finally {
+            invalidate(user);
+        }
+    }
+
+    @Override
+    public void addToGroup(@Nonnull final User user, @Nonnull final Group group, final boolean addSecurity)
+            throws DaoException {
+        try {
+            dao.addToGroup(user, group, addSecurity);
+        } finally {
+            invalidate(user);
+        }
+    }
+
+    @Override
+    public void removeFromGroup(@Nonnull final User user, @Nonnull final Group group) throws DaoException {
+        try {
+            dao.removeFromGroup(user, group);
+        } finally {
+            invalidate(user);
+        }
+    }
+
+    @Override
+    public void addToGroup(@Nonnull final Collection<User> users, @Nonnull final Group group,
+                           final boolean addSecurity) throws DaoException {
+        try {
+            dao.addToGroup(users, group, addSecurity);
+        } finally {
+            users.forEach(this::invalidate);
+        }
+    }
+
+    @Override
+    public void removeFromGroup(@Nonnull final Collection<User> users, @Nonnull final Group group)
+            throws DaoException {
+        try {
+            dao.removeFromGroup(users, group);
+        } finally {
+            users.forEach(this::invalidate);
+        }
+    }
+
+    // endregion Write operations
+
+    // region Uncached operations
+
+    @Override
+    @Deprecated
+    public User findByGuid(final String guid, final boolean includeDeactivated) {
+        return dao.findByGuid(guid, includeDeactivated);
+    }
+
+    @Override
+    public User findByFacebookId(final String id, final boolean includeDeactivated) {
+        return dao.findByFacebookId(id, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    public Set<UniqueIdentifier> findExistingIdentifiers(@Nonnull final Map<UniqueIdentifier, String> identifiers) {
+        return dao.findExistingIdentifiers(identifiers);
+    }
+
+    @Beta
+    @Nonnull
+    @Override
+    @Deprecated
+    public List<User> findAllByQuery(@Nonnull final SearchQuery query) throws DaoException {
+        return dao.findAllByQuery(query);
+    }
+
+    @Override
+    @Deprecated
+    public List<User> findAllByFirstName(final String pattern, final boolean includeDeactivated)
+            throws ExceededMaximumAllowedResultsException {
+        return dao.findAllByFirstName(pattern, includeDeactivated);
+    }
+
+    @Override
+    @Deprecated
+    public List<User> findAllByLastName(final String pattern, final boolean includeDeactivated)
+            throws ExceededMaximumAllowedResultsException {
+        return dao.findAllByLastName(pattern, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public List<User> findAllByEmail(final String pattern, final boolean includeDeactivated)
+            throws ExceededMaximumAllowedResultsException {
+        return dao.findAllByEmail(pattern, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public List<User> findAllByGroup(@Nonnull final Group group, final boolean includeDeactivated)
+            throws DaoException {
+        return dao.findAllByGroup(group, includeDeactivated);
+    }
+
+    @Override
+    @Deprecated
+    public int enqueueAll(@Nonnull final BlockingQueue<User> queue, final boolean includeDeactivated)
+            throws DaoException {
+        return dao.enqueueAll(queue, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<User> streamUsers(@Nullable final Expression expression, final boolean includeDeactivated) {
+        return dao.streamUsers(expression, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<User> streamUsers(@Nullable final Expression expression, final boolean includeDeactivated,
+                                    final boolean restrictMaxAllowed) {
+        return dao.streamUsers(expression, includeDeactivated, restrictMaxAllowed);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<User> streamUsers(@Nullable final Expression expression, final boolean includeDeactivated,
+                                    @Nonnull final Set<User.Attr> projection) {
+        return dao.streamUsers(expression, includeDeactivated, projection);
+    }
+
+    @Nonnull
+    @Override
+    public Publisher<User> publishUsers(@Nullable final Expression expression, final boolean includeDeactivated) {
+        return dao.publishUsers(expression, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<User> streamUsersInGroup(@Nonnull final Group group, @Nullable final Expression expression,
+                                           final boolean includeDeactivated, final boolean restrictMaxAllowed) {
+        return dao.streamUsersInGroup(group, expression, includeDeactivated, restrictMaxAllowed);
+    }
+
+    @Nullable
+    @Override
+    public Group getGroup(@Nullable final String id) throws DaoException {
+        return dao.getGroup(id);
+    }
+
+    @Nonnull
+    @Override
+    public List<Group> getAllGroups(@Nullable final String baseSearch) throws DaoException {
+        return dao.getAllGroups(baseSearch);
+    }
+
+    // endregion Uncached operations
+
+    private static final class UserNotCachedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UserNotCachedException() {
+            super("user not found", null, false, false);
+        }
+    }
+
+    @Immutable
+    private static final class Key {
+        @Nonnull
+        private final Lookup lookup;
+        @Nonnull
+        private final String value;
+        private final boolean includeDeactivated;
+
+        Key(@Nonnull final Lookup lookup, @Nonnull final String value, final boolean includeDeactivated) {
+            this.lookup = lookup;
+            // lookups are case-insensitive
+            this.value = value.toLowerCase(Locale.US);
+            this.includeDeactivated = includeDeactivated;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) { return true; }
+            if (!(o instanceof Key)) { return false; }
+            final Key key = (Key) o;
+            return lookup == key.lookup && includeDeactivated == key.includeDeactivated && value.equals(key.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(lookup, value, includeDeactivated);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("lookup", lookup)
+                    .add("value", value)
+                    .add("includeDeactivated", includeDeactivated)
+                    .toString();
+        }
+    }
+}
@@ -3,16 +3,24 @@
 import com.google.common.annotations.Beta;
 import org.ccci.idm.user.Group;
 import org.ccci.idm.user.SearchQuery;
+import org.ccci.idm.user.UniqueIdentifier;
 import org.ccci.idm.user.User;
 import org.ccci.idm.user.dao.exception.DaoException;
 import org.ccci.idm.user.dao.exception.ExceededMaximumAllowedResultsException;
 import org.ccci.idm.user.query.Attribute;
 import org.ccci.idm.user.query.Expression;
+import org.ccci.idm.user.util.StreamPublisher;
+import org.reactivestreams.Publisher;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -48,6 +56,26 @@ default void update(@Nonnull User original, @Nonnull User user, User.Attr... att
         update(user, attrs);
     }
 
+    /**
+     * Update several existing users in the persistent user store. A failure updating one user will not prevent the
+     * remaining users from being updated.
+     *
+     * @param users Users to be updated.
+     * @return a map of the index in users to the exception thrown for any users that failed to update.
+     */
+    @Nonnull
+    default Map<Integer, DaoException> updateAll(@Nonnull final List<User> users, final User.Attr... attrs) {
+        final Map<Integer, DaoException> failures = new LinkedHashMap<>();
+        for (int i = 0; i < users.size(); i++) {
+            try {
+                update(users.get(i), attrs);
+            } catch (final DaoException e) {
+                failures.put(i, e);
+            }
+        }
+        return failures;
+    }
+
     default void deactivate(@Nonnull final User user) throws DaoException {
         // Create a deep clone copy before proceeding
         final User original = user.clone();
@@ -216,6 +244,90 @@ default List<User> findAllByGroup(@Nonnull Group group, boolean includeDeactivat
      */
     User findByEmployeeId(String employeeId, boolean includeDeactivated);
 
+    /**
+     * Find all users with the specified The Key guids.
+     *
+     * @param guids              The Key guids being searched for.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @return a map of the requested guids to the found {@link User}s, guids without a matching user are not included.
+     */
+    @Nonnull
+    default Map<String, User> findAllByTheKeyGuids(@Nonnull final Collection<String> guids,
+                                                   final boolean includeDeactivated) {
+        final Map<String, User> users = new LinkedHashMap<>();
+        for (final String guid : guids) {
+            if (guid != null && !users.containsKey(guid)) {
+                final User user = findByTheKeyGuid(guid, includeDeactivated);
+                if (user != null) {
+                    users.put(guid, user);
+                }
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Find all users with the specified e-mail addresses.
+     *
+     * @param emails             e-mail addresses being searched for.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @return a map of the requested e-mail addresses to the found {@link User}s, e-mail addresses without a matching
+     * user are not included.
+     */
+    @Nonnull
+    default Map<String, User> findAllByEmails(@Nonnull final Collection<String> emails,
+                                              final boolean includeDeactivated) {
+        final Map<String, User> users = new LinkedHashMap<>();
+        for (final String email : emails) {
+            if (email != null && !users.containsKey(email)) {
+                final User user = findByEmail(email, includeDeactivated);
+                if (user != null) {
+                    users.put(email, user);
+                }
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Find which of the specified unique identifiers are already in use. Emails are only checked against active users,
+     * all guids are checked against both active and deactivated users.
+     *
+     * @param identifiers the identifier values to check, null values are ignored.
+     * @return the identifiers that are already in use by an existing user.
+     */
+    @Nonnull
+    default Set<UniqueIdentifier> findExistingIdentifiers(@Nonnull final Map<UniqueIdentifier, String> identifiers) {
+        final Set<UniqueIdentifier> existing = EnumSet.noneOf(UniqueIdentifier.class);
+        identifiers.forEach((type, value) -> {
+            if (value == null) {
+                return;
+            }
+
+            final User user;
+            switch (type) {
+                case EMAIL:
+                    user = findByEmail(value, false);
+                    break;
+                case GUID:
+                    user = findByGuid(value, true);
+                    break;
+                case RELAY_GUID:
+                    user = findByRelayGuid(value, true);
+                    break;
+                case THEKEY_GUID:
+                    user = findByTheKeyGuid(value, true);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unrecognized UniqueIdentifier: " + type);
+            }
+            if (user != null) {
+                existing.add(type);
+            }
+        });
+        return existing;
+    }
+
     /**
      * Add all users to the specified {@link BlockingQueue}. This method will use {@link BlockingQueue#put(Object)} to
      * enqueue users.
@@ -253,6 +365,37 @@ default Stream<User> streamUsers(@Nullable Expression expression, boolean includ
     @Nonnull
     Stream<User> streamUsers(@Nullable Expression expression, boolean includeDeactivated, boolean restrictMaxAllowed);
 
+    /**
+     * Provide a Java 8 Stream over all the users that match the specified expression, only loading the requested
+     * attributes. The identifying attributes (email, deactivated flag & guids) are always loaded, any attribute not in
+     * the projection may be left unpopulated. Implementations that can't restrict the loaded attributes will return
+     * fully populated users. This stream needs to be closed after use.
+     *
+     * @param expression         The search expression
+     * @param includeDeactivated Whether deactivated users should be included in the Stream
+     * @param projection         The user attributes to load
+     * @return a Stream of all users
+     */
+    @Nonnull
+    default Stream<User> streamUsers(@Nullable final Expression expression, final boolean includeDeactivated,
+                                     @Nonnull final Set<User.Attr> projection) {
+        return streamUsers(expression, includeDeactivated);
+    }
+
+    /**
+     * Provide a Reactive Streams Publisher of all the users that match the specified expression. Each subscriber
+     * receives its own underlying {@link #streamUsers(Expression, boolean)} Stream which is opened once the subscriber
+     * signals demand, and users are only loaded from the backing store as they are requested.
+     *
+     * @param expression         The search expression
+     * @param includeDeactivated Whether deactivated users should be included
+     * @return a Publisher of all matching users
+     */
+    @Nonnull
+    default Publisher<User> publishUsers(@Nullable final Expression expression, final boolean includeDeactivated) {
+        return new StreamPublisher<>(() -> streamUsers(expression, includeDeactivated));
+    }
+
     @Nonnull
     default Stream<User> streamUsersInGroup(@Nonnull final Group group, @Nullable Expression expression,
                                             boolean includeDeactivated, final boolean restrictMaxAllowed) {
@@ -290,6 +433,32 @@ default void addToGroup(@Nonnull User user, @Nonnull Group group, boolean addSec
      */
     void removeFromGroup(@Nonnull User user, @Nonnull Group group) throws DaoException;
 
+    /**
+     * Add several users to a group
+     *
+     * @param users       to add to a group
+     * @param group       to add the users to
+     * @param addSecurity specifies if the Group security should be shared with the users being added.
+     */
+    default void addToGroup(@Nonnull Collection<User> users, @Nonnull Group group, boolean addSecurity)
+            throws DaoException {
+        for (final User user : users) {
+            addToGroup(user, group, addSecurity);
+        }
+    }
+
+    /**
+     * Remove several users from a group
+     *
+     * @param users to remove
+     * @param group from group
+     */
+    default void removeFromGroup(@Nonnull Collection<User> users, @Nonnull Group group) throws DaoException {
+        for (final User user : users) {
+            removeFromGroup(user, group);
+        }
+    }
+
     @Nullable
     Group getGroup(@Nullable String id) throws DaoException;
 
@@ -127,7 +127,11 @@ protected Set<String> getAttributeMask(final Attr... attrs) {
         // build & return the requested mask
         ImmutableSet.Builder<String> mask = ImmutableSet.builder();
         for(final Attr attr : attrs) {
-            mask.addAll(MASK.get(attr));
+            // some attributes (e.g. ORCA) aren't stored in LDAP
+            final Set<String> attrMask = MASK.get(attr);
+            if (attrMask != null) {
+                mask.addAll(attrMask);
+            }
         }
         return mask.build();
     }
@@ -1,11 +1,15 @@
 package org.ccci.idm.user.query;
 
+import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
 import org.ccci.idm.user.User;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 @Immutable
 public final class BooleanExpression implements Expression {
@@ -18,6 +22,9 @@ public enum Type {AND, OR}
     @Nonnull
     private final List<Expression> components;
 
+    @Nullable
+    private transient volatile Predicate<User> predicate;
+
     BooleanExpression(@Nonnull final Type type, @Nonnull final Expression expression,
                       @Nonnull final Expression... expressions) {
         this.type = type;
@@ -47,13 +54,61 @@ public List<Expression> getComponents() {
 
     @Override
     public boolean matches(@Nonnull final User user) {
+        return compile().test(user);
+    }
+
+    @Nonnull
+    @Override
+    public Predicate<User> compile() {
+        Predicate<User> predicate = this.predicate;
+        if (predicate == null) {
+            predicate = this.predicate = buildPredicate();
+        }
+        return predicate;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private Predicate<User> buildPredicate() {
+        final List<Predicate<User>> compiled = new ArrayList<>();
+        flatten(this, compiled);
+        if (compiled.size() == 1) {
+            return compiled.get(0);
+        }
+
+        final Predicate<User>[] predicates = compiled.toArray(new Predicate[0]);
         switch (type) {
             case AND:
-                return components.stream().allMatch(expr -> expr.matches(user));
+                return user -> {
+                    for (final Predicate<User> component : predicates) {
+                        if (!component.test(user)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                };
             case OR:
-                return components.stream().anyMatch(expr -> expr.matches(user));
+                return user -> {
+                    for (final Predicate<User> component : predicates) {
+                        if (component.test(user)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
             default:
-                return false;
+                return user -> false;
+        }
+    }
+
+    // nested expressions of the same type are evaluated as a single flat list of predicates
+    private void flatten(@Nonnull final BooleanExpression expression, @Nonnull final List<Predicate<User>> compiled) {
+        for (final Expression component : expression.components) {
+            if (component instanceof BooleanExpression && ((BooleanExpression) component).type == type) {
+                flatten((BooleanExpression) component, compiled);
+            } else {
+                compiled.add(component.compile());
+            }
         }
     }
 
@@ -74,4 +129,18 @@ public Expression or(@Nonnull final Expression... expressions) {
 
         return new BooleanExpression(this, expressions);
     }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof BooleanExpression)) { return false; }
+
+        final BooleanExpression that = (BooleanExpression) o;
+        return type == that.type && components.equals(that.components);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(type, components);
+    }
 }
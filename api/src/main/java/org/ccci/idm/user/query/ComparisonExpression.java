@@ -1,12 +1,13 @@
 package org.ccci.idm.user.query;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Strings;
-import kotlin.text.StringsKt;
 import org.ccci.idm.user.Group;
 import org.ccci.idm.user.User;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.function.Predicate;
 
 public class ComparisonExpression implements Expression {
     private static final long serialVersionUID = 6470937370962349745L;
@@ -22,6 +23,9 @@ public enum Type {EQ, LIKE, SW}
     @Nullable
     private final Group group;
 
+    @Nullable
+    private transient volatile Predicate<User> predicate;
+
     ComparisonExpression(@Nonnull final Type type, @Nonnull final Attribute attribute, @Nonnull final String value) {
         this.type = type;
         this.attribute = attribute;
@@ -58,38 +62,81 @@ public Group getGroup() {
 
     @Override
     public boolean matches(@Nonnull final User user) {
+        return compile().test(user);
+    }
+
+    @Nonnull
+    @Override
+    public Predicate<User> compile() {
+        Predicate<User> predicate = this.predicate;
+        if (predicate == null) {
+            predicate = this.predicate = buildPredicate();
+        }
+        return predicate;
+    }
+
+    @Nonnull
+    private Predicate<User> buildPredicate() {
+        if (attribute == Attribute.GROUP) {
+            final Group group = this.group;
+            return user -> group != null && user.getGroups().contains(group);
+        }
+
+        final Predicate<String> matcher = buildValueMatcher();
         switch (attribute) {
             case GUID:
-                return matches(user.getTheKeyGuid());
+                return user -> matcher.test(user.getTheKeyGuid());
             case EMAIL:
-                return matches(user.getEmail());
+                return user -> matcher.test(user.getEmail());
             case EMAIL_ALIAS:
-                return user.getCruProxyAddresses().stream().anyMatch(this::matches);
+                return user -> {
+                    for (final String address : user.getCruProxyAddresses()) {
+                        if (matcher.test(address)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
             case FIRST_NAME:
-                return matches(user.getFirstName());
+                return user -> matcher.test(user.getFirstName());
             case LAST_NAME:
-                return matches(user.getLastName());
+                return user -> matcher.test(user.getLastName());
             case US_EMPLOYEE_ID:
-                return matches(user.getEmployeeId());
+                return user -> matcher.test(user.getEmployeeId());
             case US_DESIGNATION:
-                return matches(user.getCruDesignation());
-            case GROUP:
-                return user.getGroups().stream().anyMatch(g -> g.equals(group));
+                return user -> matcher.test(user.getCruDesignation());
             default:
-                return false;
+                return user -> false;
         }
     }
 
-    private boolean matches(@Nullable final String value) {
+    @Nonnull
+    private Predicate<String> buildValueMatcher() {
+        final String expected = Strings.nullToEmpty(value);
         switch (type) {
             case EQ:
-                return StringsKt.equals(value, this.value, true);
+                return expected::equalsIgnoreCase;
             case SW:
-                return StringsKt.startsWith(Strings.nullToEmpty(value), Strings.nullToEmpty(this.value), true);
+                return actual -> Strings.nullToEmpty(actual).regionMatches(true, 0, expected, 0, expected.length());
             case LIKE:
-                throw new UnsupportedOperationException("LIKE comparisons are not currently supported");
+                return new GlobMatcher(expected);
+            default:
+                return actual -> false;
         }
+    }
 
-        return false;
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof ComparisonExpression)) { return false; }
+
+        final ComparisonExpression that = (ComparisonExpression) o;
+        return type == that.type && attribute == that.attribute && Objects.equal(value, that.value) &&
+                Objects.equal(group, that.group);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(type, attribute, value, group);
     }
 }
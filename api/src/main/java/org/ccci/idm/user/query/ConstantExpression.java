@@ -0,0 +1,54 @@
+package org.ccci.idm.user.query;
+
+import org.ccci.idm.user.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.function.Predicate;
+
+/**
+ * An expression that always or never matches. These are only produced by {@link ExpressionNormalizer} as the entire
+ * normalized expression, never as a component of another expression.
+ */
+@Immutable
+public final class ConstantExpression implements Expression {
+    private static final long serialVersionUID = -2153520414853125567L;
+
+    public static final ConstantExpression TRUE = new ConstantExpression(true);
+    public static final ConstantExpression FALSE = new ConstantExpression(false);
+
+    private final boolean value;
+
+    private ConstantExpression(final boolean value) {
+        this.value = value;
+    }
+
+    public boolean getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean matches(@Nonnull final User user) {
+        return value;
+    }
+
+    @Nonnull
+    @Override
+    public Predicate<User> compile() {
+        return value ? user -> true : user -> false;
+    }
+
+    @Override
+    public Expression not() {
+        return value ? FALSE : TRUE;
+    }
+
+    @Override
+    public String toString() {
+        return Boolean.toString(value);
+    }
+
+    private Object readResolve() {
+        return value ? TRUE : FALSE;
+    }
+}
@@ -4,6 +4,7 @@
 
 import javax.annotation.Nonnull;
 import java.io.Serializable;
+import java.util.function.Predicate;
 
 public interface Expression extends Serializable {
     default Expression and(Expression... expressions) {
@@ -23,4 +24,14 @@ static Expression not(@Nonnull final Expression expression) {
     }
 
     boolean matches(@Nonnull User user);
+
+    /**
+     * Compile this expression into a {@link Predicate} specialized for evaluating this expression against many users.
+     *
+     * @return a predicate equivalent to {@link #matches(User)}
+     */
+    @Nonnull
+    default Predicate<User> compile() {
+        return this::matches;
+    }
 }
@@ -0,0 +1,148 @@
+package org.ccci.idm.user.query;
+
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites search expressions into a simpler equivalent form before they are translated for a specific backend.
+ *
+ * <ul>
+ * <li>nested AND/OR expressions of the same type are flattened and duplicate terms are removed</li>
+ * <li>NOT is pushed down to the comparisons using De Morgan's laws, and double negation is removed</li>
+ * <li>{@code x AND NOT x} and conflicting equality comparisons of a single-valued attribute collapse to
+ * {@link ConstantExpression#FALSE}, {@code x OR NOT x} and their negations collapse to
+ * {@link ConstantExpression#TRUE}</li>
+ * </ul>
+ *
+ * Constant expressions are only ever returned as the entire normalized expression.
+ */
+public final class ExpressionNormalizer {
+    // attributes a user only has a single value for in every backend
+    private static final Set<Attribute> SINGLE_VALUED = ImmutableSet.of(Attribute.GUID);
+
+    private ExpressionNormalizer() {
+    }
+
+    @Nullable
+    public static Expression normalize(@Nullable final Expression expression) {
+        return normalize(expression, SINGLE_VALUED);
+    }
+
+    /**
+     * @param singleValued the attributes a user only has a single value for in the backend the expression is
+     *                     normalized for
+     */
+    @Nullable
+    public static Expression normalize(@Nullable final Expression expression,
+                                       @Nonnull final Set<Attribute> singleValued) {
+        return expression != null ? normalize(expression, false, singleValued) : null;
+    }
+
+    @Nonnull
+    private static Expression normalize(@Nonnull final Expression expression, final boolean negate,
+                                        @Nonnull final Set<Attribute> singleValued) {
+        if (expression instanceof NotExpression) {
+            return normalize(((NotExpression) expression).getComponent(), !negate, singleValued);
+        } else if (expression instanceof BooleanExpression) {
+            final BooleanExpression bool = (BooleanExpression) expression;
+            final BooleanExpression.Type type = negate ? invert(bool.getType()) : bool.getType();
+            final List<Expression> components = new ArrayList<>(bool.getComponents().size());
+            for (final Expression component : bool.getComponents()) {
+                components.add(normalize(component, negate, singleValued));
+            }
+            return combine(type, components, singleValued);
+        }
+
+        // comparisons, constants and unrecognized expressions are left to the backend
+        return negate ? expression.not() : expression;
+    }
+
+    @Nonnull
+    private static Expression combine(@Nonnull final BooleanExpression.Type type,
+                                      @Nonnull final List<Expression> components,
+                                      @Nonnull final Set<Attribute> singleValued) {
+        final ConstantExpression identity = type == BooleanExpression.Type.AND ?
+                ConstantExpression.TRUE : ConstantExpression.FALSE;
+        final ConstantExpression absorbing = type == BooleanExpression.Type.AND ?
+                ConstantExpression.FALSE : ConstantExpression.TRUE;
+
+        // flatten & de-duplicate terms
+        final Set<Expression> terms = new LinkedHashSet<>();
+        for (final Expression component : components) {
+            if (component == absorbing) {
+                return absorbing;
+            } else if (component == identity) {
+                continue;
+            } else if (component instanceof BooleanExpression && ((BooleanExpression) component).getType() == type) {
+                terms.addAll(((BooleanExpression) component).getComponents());
+            } else {
+                terms.add(component);
+            }
+        }
+
+        // x AND NOT x == FALSE, x OR NOT x == TRUE
+        for (final Expression term : terms) {
+            if (term instanceof NotExpression && terms.contains(((NotExpression) term).getComponent())) {
+                return absorbing;
+            }
+        }
+
+        // (attr == a) AND (attr == b) == FALSE, NOT (attr == a) OR NOT (attr == b) == TRUE for single-valued attributes
+        if (hasConflictingEquality(terms, type == BooleanExpression.Type.OR, singleValued)) {
+            return absorbing;
+        }
+
+        if (terms.isEmpty()) {
+            return identity;
+        } else if (terms.size() == 1) {
+            return terms.iterator().next();
+        }
+
+        final Expression[] expressions = terms.toArray(new Expression[0]);
+        final Expression[] rest = new Expression[expressions.length - 1];
+        System.arraycopy(expressions, 1, rest, 0, rest.length);
+        return new BooleanExpression(type, expressions[0], rest);
+    }
+
+    private static boolean hasConflictingEquality(@Nonnull final Set<Expression> terms, final boolean negated,
+                                                  @Nonnull final Set<Attribute> singleValued) {
+        final Map<Attribute, String> values = new EnumMap<>(Attribute.class);
+        for (Expression term : terms) {
+            if (negated) {
+                if (!(term instanceof NotExpression)) {
+                    continue;
+                }
+                term = ((NotExpression) term).getComponent();
+            }
+            if (!(term instanceof ComparisonExpression)) {
+                continue;
+            }
+
+            final ComparisonExpression comparison = (ComparisonExpression) term;
+            final String value = comparison.getValue();
+            if (comparison.getType() != ComparisonExpression.Type.EQ || value == null ||
+                    !singleValued.contains(comparison.getAttribute())) {
+                continue;
+            }
+
+            final String previous = values.putIfAbsent(comparison.getAttribute(), value);
+            if (previous != null && !previous.equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    private static BooleanExpression.Type invert(@Nonnull final BooleanExpression.Type type) {
+        return type == BooleanExpression.Type.AND ? BooleanExpression.Type.OR : BooleanExpression.Type.AND;
+    }
+}
@@ -0,0 +1,75 @@
+package org.ccci.idm.user.query;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * A case-insensitive matcher for LDAP style substring patterns, where {@code *} matches any sequence of characters.
+ */
+@Immutable
+final class GlobMatcher implements Predicate<String> {
+    private static final Pattern WILDCARD = Pattern.compile("\\*", Pattern.LITERAL);
+
+    // the literal segments between wildcards, the first and last segment are anchored unless they are empty
+    @Nonnull
+    private final String[] segments;
+    private final int minLength;
+
+    GlobMatcher(@Nonnull final String pattern) {
+        segments = WILDCARD.split(pattern, -1);
+
+        int length = 0;
+        for (final String segment : segments) {
+            length += segment.length();
+        }
+        minLength = length;
+    }
+
+    @Override
+    public boolean test(@Nullable final String value) {
+        if (value == null || value.length() < minLength) {
+            return false;
+        }
+
+        // no wildcards, this is an equality check
+        final String first = segments[0];
+        if (segments.length == 1) {
+            return value.equalsIgnoreCase(first);
+        }
+
+        // anchored prefix & suffix
+        final String last = segments[segments.length - 1];
+        if (!value.regionMatches(true, 0, first, 0, first.length())) {
+            return false;
+        }
+        final int end = value.length() - last.length();
+        if (!value.regionMatches(true, end, last, 0, last.length())) {
+            return false;
+        }
+
+        // greedily find the remaining segments in order between the prefix and suffix
+        int pos = first.length();
+        for (int i = 1; i < segments.length - 1; i++) {
+            final String segment = segments[i];
+            pos = indexOfIgnoreCase(value, segment, pos, end);
+            if (pos < 0) {
+                return false;
+            }
+            pos += segment.length();
+        }
+        return true;
+    }
+
+    private static int indexOfIgnoreCase(final String value, final String segment, final int from, final int end) {
+        final int last = end - segment.length();
+        for (int i = from; i <= last; i++) {
+            if (value.regionMatches(true, i, segment, 0, segment.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,8 +1,10 @@
 package org.ccci.idm.user.query;
 
+import com.google.common.base.Objects;
 import org.ccci.idm.user.User;
 
 import javax.annotation.Nonnull;
+import java.util.function.Predicate;
 
 public class NotExpression implements Expression {
     private static final long serialVersionUID = -7321113440722414788L;
@@ -24,8 +26,28 @@ public boolean matches(@Nonnull final User user) {
         return !component.matches(user);
     }
 
+    @Nonnull
+    @Override
+    public Predicate<User> compile() {
+        return component.compile().negate();
+    }
+
     @Override
     public Expression not() {
         return component;
     }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof NotExpression)) { return false; }
+
+        final NotExpression that = (NotExpression) o;
+        return Objects.equal(component, that.component);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(component);
+    }
 }
@@ -0,0 +1,172 @@
+package org.ccci.idm.user.util;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * A Reactive Streams {@link Publisher} backed by a lazily opened {@link Stream}. A new Stream is opened for every
+ * subscriber once it first signals demand, and elements are only pulled from the Stream to satisfy outstanding demand.
+ * The Stream is closed when it is exhausted, when it fails, or when the subscription is cancelled.
+ *
+ * Elements are emitted on the thread that signalled demand, no threads are held while there is no outstanding demand.
+ */
+public final class StreamPublisher<T> implements Publisher<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamPublisher.class);
+
+    @Nonnull
+    private final Supplier<? extends Stream<? extends T>> source;
+
+    public StreamPublisher(@Nonnull final Supplier<? extends Stream<? extends T>> source) {
+        this.source = source;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber cannot be null");
+        }
+        subscriber.onSubscribe(new StreamSubscription<>(subscriber, source));
+    }
+
+    private static final class StreamSubscription<T> implements Subscription {
+        @Nonnull
+        private final Subscriber<? super T> subscriber;
+        @Nonnull
+        private final Supplier<? extends Stream<? extends T>> source;
+
+        private final AtomicLong requested = new AtomicLong();
+        // work-in-progress counter, used to serialize emission across threads signalling demand
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        @Nullable
+        private volatile Throwable invalidRequest;
+
+        // only accessed while holding the emission "lock" (wip)
+        private boolean done = false;
+        @Nullable
+        private Stream<? extends T> stream;
+        @Nullable
+        private Iterator<? extends T> iterator;
+
+        StreamSubscription(@Nonnull final Subscriber<? super T> subscriber,
+                           @Nonnull final Supplier<? extends Stream<? extends T>> source) {
+            this.subscriber = subscriber;
+            this.source = source;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("§3.9: request must be positive, was: " + n);
+            } else {
+                requested.accumulateAndGet(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                if (!done) {
+                    emit();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            while (true) {
+                if (cancelled) {
+                    finish();
+                    return;
+                }
+                final Throwable invalid = invalidRequest;
+                if (invalid != null) {
+                    finish();
+                    signal(() -> subscriber.onError(invalid));
+                    return;
+                }
+                if (requested.get() == 0) {
+                    return;
+                }
+
+                // pull the next element from the underlying stream
+                final T next;
+                try {
+                    if (iterator == null) {
+                        stream = source.get();
+                        iterator = stream.iterator();
+                    }
+                    if (!iterator.hasNext()) {
+                        finish();
+                        signal(subscriber::onComplete);
+                        return;
+                    }
+                    next = iterator.next();
+                } catch (final RuntimeException e) {
+                    finish();
+                    signal(() -> subscriber.onError(e));
+                    return;
+                }
+
+                if (requested.get() != Long.MAX_VALUE) {
+                    requested.decrementAndGet();
+                }
+                if (!signal(() -> subscriber.onNext(next))) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * §2.13: a subscriber throwing from a signal method is treated as having cancelled the subscription. The
+         * underlying stream is closed and the error is logged, since it can't be signalled back to the subscriber.
+         */
+        private boolean signal(@Nonnull final Runnable signal) {
+            try {
+                signal.run();
+                return true;
+            } catch (final Throwable t) {
+                LOG.error("subscriber {} violated §2.13 by throwing an exception, cancelling subscription",
+                        subscriber, t);
+                cancelled = true;
+                finish();
+                return false;
+            }
+        }
+
+        private void finish() {
+            done = true;
+            iterator = null;
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (final RuntimeException e) {
+                    LOG.debug("error closing underlying stream", e);
+                }
+                stream = null;
+            }
+        }
+    }
+}
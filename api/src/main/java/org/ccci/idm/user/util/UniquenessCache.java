@@ -0,0 +1,128 @@
+package org.ccci.idm.user.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.ccci.idm.user.User;
+import org.ccci.idm.user.dao.UserDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Tracks which guids are known to not exist, allowing new user uniqueness checks to skip lookups for freshly generated
+ * guids that are guaranteed to miss.
+ *
+ * This is a bloom filter of every guid in use when it was last rebuilt. Only freshly generated random guids should be
+ * checked against this filter, a supplied guid or email may have been created elsewhere since the filter was built and
+ * always has to be confirmed with the UserDao. The filter is never authoritative for a positive result.
+ */
+public class UniquenessCache {
+    private static final Logger LOG = LoggerFactory.getLogger(UniquenessCache.class);
+
+    private int expectedGuids = 1000000;
+    private double falsePositiveProbability = 0.01;
+
+    @Nullable
+    private volatile BloomFilter<CharSequence> guids;
+    // guids marked present while a rebuild is in progress
+    @Nullable
+    private Set<String> pendingGuids;
+
+    public void setExpectedGuids(final int expected) {
+        expectedGuids = expected;
+    }
+
+    public void setFalsePositiveProbability(final double probability) {
+        falsePositiveProbability = probability;
+    }
+
+    // region Guid membership filter
+
+    /**
+     * Mark all guids of the specified user as being in use.
+     *
+     * @param user the user that now exists
+     */
+    public void markPresent(@Nonnull final User user) {
+        synchronized (this) {
+            for (final String guid : new String[]{user.getGuid(), user.getRawRelayGuid(), user.getRawTheKeyGuid()}) {
+                if (guid == null) {
+                    continue;
+                }
+                final String normalized = guid.toUpperCase(Locale.US);
+                if (guids != null) {
+                    guids.put(normalized);
+                }
+                if (pendingGuids != null) {
+                    pendingGuids.add(normalized);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check to see if a freshly generated random guid is definitely not in use. This will return false if the guid
+     * might be in use or if the membership filter hasn't been built yet.
+     *
+     * @param guid the generated guid
+     * @return true if the guid is definitely available
+     */
+    public boolean isGeneratedGuidAvailable(@Nullable final String guid) {
+        final BloomFilter<CharSequence> filter = guids;
+        return guid != null && filter != null && !filter.mightContain(guid.toUpperCase(Locale.US));
+    }
+
+    /**
+     * Rebuild the guid membership filter by scanning all users in the specified UserDao.
+     *
+     * @param dao the UserDao to scan
+     */
+    public void rebuild(@Nonnull final UserDao dao) {
+        synchronized (this) {
+            if (pendingGuids != null) {
+                LOG.debug("uniqueness filter rebuild already in progress, skipping");
+                return;
+            }
+            pendingGuids = new HashSet<>();
+        }
+
+        try {
+            final BloomFilter<CharSequence> filter =
+                    BloomFilter.create(Funnels.stringFunnel(Charsets.UTF_8), expectedGuids, falsePositiveProbability);
+            try (Stream<User> users = dao.streamUsers(null, true)) {
+                users.forEach(user -> {
+                    put(filter, user.getGuid());
+                    put(filter, user.getRawRelayGuid());
+                    put(filter, user.getRawTheKeyGuid());
+                });
+            }
+
+            synchronized (this) {
+                if (pendingGuids != null) {
+                    pendingGuids.forEach(filter::put);
+                }
+                guids = filter;
+            }
+            LOG.debug("rebuilt uniqueness filter with approximately {} guids", filter.approximateElementCount());
+        } finally {
+            synchronized (this) {
+                pendingGuids = null;
+            }
+        }
+    }
+
+    private static void put(@Nonnull final BloomFilter<CharSequence> filter, @Nullable final String guid) {
+        if (guid != null) {
+            filter.put(guid.toUpperCase(Locale.US));
+        }
+    }
+
+    // endregion Guid membership filter
+}
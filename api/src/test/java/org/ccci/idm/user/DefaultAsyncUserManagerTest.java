@@ -0,0 +1,70 @@
+package org.ccci.idm.user;
+
+import static org.ccci.idm.user.TestUtil.newUser;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.ccci.idm.user.exception.EmailAlreadyExistsException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+public class DefaultAsyncUserManagerTest {
+    private UserManager userManager;
+    private DefaultAsyncUserManager asyncUserManager;
+
+    @Before
+    public void setup() {
+        userManager = mock(UserManager.class);
+        asyncUserManager = new DefaultAsyncUserManager(userManager, 2, 10);
+    }
+
+    @After
+    public void cleanup() {
+        asyncUserManager.close();
+    }
+
+    @Test
+    public void verifyFindUser() throws Exception {
+        final User user = newUser();
+        when(userManager.findUserByTheKeyGuid(user.getTheKeyGuid(), true)).thenReturn(user);
+
+        assertSame(user, asyncUserManager.findUserByTheKeyGuid(user.getTheKeyGuid(), true).get());
+    }
+
+    @Test
+    public void verifyCreateUserFailure() throws Exception {
+        final User user = newUser();
+        doThrow(new EmailAlreadyExistsException()).when(userManager).createUser(user);
+
+        final CompletableFuture<Void> future = asyncUserManager.createUser(user);
+        try {
+            future.get();
+            fail("createUser should have failed");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(EmailAlreadyExistsException.class));
+        }
+        verify(userManager).createUser(user);
+    }
+
+    @Test
+    public void verifyRejectedExecution() {
+        final DefaultAsyncUserManager rejecting = new DefaultAsyncUserManager(userManager, r -> {
+            throw new RejectedExecutionException();
+        });
+
+        final CompletableFuture<User> future = rejecting.findUserByEmail("test@example.com", false);
+        assertTrue(future.isCompletedExceptionally());
+    }
+}
@@ -1,12 +1,30 @@
 package org.ccci.idm.user;
 
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
+import org.ccci.idm.user.dao.UserDao;
+import org.ccci.idm.user.exception.EmailAlreadyExistsException;
 import org.ccci.idm.user.exception.InvalidEmailUserException;
+import org.ccci.idm.user.exception.RelayGuidAlreadyExistsException;
+import org.ccci.idm.user.exception.TheKeyGuidAlreadyExistsException;
+import org.ccci.idm.user.exception.UserException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import javax.annotation.Nonnull;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
 
 @RunWith(JUnitParamsRunner.class)
 public class DefaultUserManagerTest {
@@ -29,6 +47,83 @@ public void verifyValidateEmailInvalid(final String email) throws Exception {
         manager.validateEmail(newUser(email));
     }
 
+    @Test
+    public void verifyValidateNewUserUsesSingleLookup() throws Exception {
+        final UserDao dao = mock(UserDao.class);
+        when(dao.findExistingIdentifiers(anyMap())).thenReturn(EnumSet.noneOf(UniqueIdentifier.class));
+        final DefaultUserManager manager = new DefaultUserManager();
+        manager.setUserDao(dao);
+
+        final User user = TestUtil.newUser();
+        manager.validateNewUser(user);
+        verify(dao).findExistingIdentifiers(ImmutableMap.of(
+                UniqueIdentifier.EMAIL, user.getEmail(),
+                UniqueIdentifier.RELAY_GUID, user.getRawRelayGuid(),
+                UniqueIdentifier.THEKEY_GUID, user.getRawTheKeyGuid()));
+        verifyNoMoreInteractions(dao);
+    }
+
+    @Test
+    @Parameters(method = "existingIdentifierErrors")
+    public void verifyValidateNewUserExistingIdentifier(final UniqueIdentifier identifier,
+                                                         final Class<? extends UserException> error) {
+        final UserDao dao = mock(UserDao.class);
+        when(dao.findExistingIdentifiers(anyMap())).thenReturn(EnumSet.of(identifier));
+        final DefaultUserManager manager = new DefaultUserManager();
+        manager.setUserDao(dao);
+
+        try {
+            manager.validateNewUser(TestUtil.newUser());
+            fail("validateNewUser didn't detect the existing " + identifier);
+        } catch (final UserException e) {
+            assertThat(e, instanceOf(error));
+        }
+    }
+
+    private Object[] existingIdentifierErrors() {
+        return new Object[]{
+                new Object[]{UniqueIdentifier.EMAIL, EmailAlreadyExistsException.class},
+                new Object[]{UniqueIdentifier.RELAY_GUID, RelayGuidAlreadyExistsException.class},
+                new Object[]{UniqueIdentifier.THEKEY_GUID, TheKeyGuidAlreadyExistsException.class},
+        };
+    }
+
+    @Test(expected = EmailAlreadyExistsException.class)
+    public void verifyValidateNewUserUsesOverriddenLookup() throws Exception {
+        final UserDao dao = mock(UserDao.class);
+        final DefaultUserManager manager = new DefaultUserManager() {
+            @Nonnull
+            @Override
+            protected Set<UniqueIdentifier> findExistingNewUserIdentifiers(
+                    final Map<UniqueIdentifier, String> identifiers) {
+                return EnumSet.of(UniqueIdentifier.EMAIL);
+            }
+        };
+        manager.setUserDao(dao);
+
+        try {
+            manager.validateNewUser(TestUtil.newUser());
+        } finally {
+            verifyNoMoreInteractions(dao);
+        }
+    }
+
+    @Test
+    public void verifySetNewUserDefaultsUsesSingleLookup() throws Exception {
+        final UserDao dao = mock(UserDao.class);
+        when(dao.findExistingIdentifiers(anyMap())).thenReturn(EnumSet.noneOf(UniqueIdentifier.class));
+        final DefaultUserManager manager = new DefaultUserManager();
+        manager.setUserDao(dao);
+
+        final User user = TestUtil.newUser();
+        manager.setNewUserDefaults(user);
+        verify(dao).findExistingIdentifiers(ImmutableMap.of(
+                UniqueIdentifier.GUID, user.getGuid(),
+                UniqueIdentifier.RELAY_GUID, user.getRelayGuid(),
+                UniqueIdentifier.THEKEY_GUID, user.getTheKeyGuid()));
+        verifyNoMoreInteractions(dao);
+    }
+
     @Nonnull
     private static User newUser(@Nonnull final String email) {
         final User user = new User();
@@ -7,14 +7,17 @@
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
 
 import com.google.common.base.Strings;
 import org.apache.commons.collections.CollectionUtils;
 import org.junit.Test;
 
 import java.security.SecureRandom;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class UserTest {
     private Random RAND = new SecureRandom();
@@ -234,4 +237,33 @@ public void testSetEmail() throws Exception {
             assertFalse(user.isEmailVerified());
         }
     }
+
+    @Test
+    public void testLazyGroups() throws Exception {
+        final Group group = mock(Group.class);
+        final AtomicInteger resolved = new AtomicInteger(0);
+
+        final User user = new User();
+        user.setLazyGroups(() -> {
+            resolved.incrementAndGet();
+            return Collections.singleton(group);
+        });
+        assertEquals(0, resolved.get());
+
+        // groups are resolved once on first access
+        assertEquals(Collections.singleton(group), user.getGroups());
+        assertEquals(Collections.singleton(group), user.getGroups());
+        assertEquals(1, resolved.get());
+
+        // setting groups directly discards any unresolved lazy groups
+        user.setLazyGroups(() -> {
+            throw new IllegalStateException("lazy groups should not have been resolved");
+        });
+        user.setGroups(null);
+        assertTrue(user.getGroups().isEmpty());
+
+        // clones resolve the lazy groups of the source user
+        user.setLazyGroups(() -> Collections.singleton(group));
+        assertEquals(Collections.singleton(group), user.clone().getGroups());
+    }
 }
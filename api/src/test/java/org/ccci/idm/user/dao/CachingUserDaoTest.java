@@ -0,0 +1,137 @@
+package org.ccci.idm.user.dao;
+
+import static org.ccci.idm.user.TestUtil.newUser;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import org.ccci.idm.user.User;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Collections;
+import java.util.Locale;
+
+public class CachingUserDaoTest {
+    @Mock
+    private UserDao dao;
+
+    private CachingUserDao cachingDao;
+    private User user;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        cachingDao = new CachingUserDao(dao, 100, Duration.standardMinutes(5));
+
+        user = newUser();
+        when(dao.findByTheKeyGuid(eq(user.getTheKeyGuid()), anyBoolean())).thenReturn(user);
+        when(dao.findByEmail(eq(user.getEmail()), anyBoolean())).thenReturn(user);
+    }
+
+    @Test
+    public void verifyLookupsAreCached() {
+        final User first = cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+        final User second = cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+        assertEquals(user, first);
+        assertEquals(user, second);
+        assertNotSame(first, second);
+        verify(dao, times(1)).findByTheKeyGuid(user.getTheKeyGuid(), false);
+
+        // includeDeactivated is part of the cache key
+        cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), true);
+        verify(dao, times(1)).findByTheKeyGuid(user.getTheKeyGuid(), true);
+    }
+
+    @Test
+    public void verifyCachedUserIsIsolatedFromCallers() {
+        cachingDao.findByEmail(user.getEmail(), false).setFirstName("Modified");
+        assertEquals(user.getFirstName(), cachingDao.findByEmail(user.getEmail(), false).getFirstName());
+    }
+
+    @Test
+    public void verifyMissesAreNotCached() {
+        when(dao.findByRelayGuid(anyString(), anyBoolean())).thenReturn(null);
+        assertNull(cachingDao.findByRelayGuid("missing", false));
+        assertNull(cachingDao.findByRelayGuid("missing", false));
+        verify(dao, times(2)).findByRelayGuid("missing", false);
+    }
+
+    @Test
+    public void verifyUpdateInvalidatesAllEntriesForUser() {
+        cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+        cachingDao.findByEmail(user.getEmail(), false);
+        assertEquals(2, cachingDao.size());
+
+        cachingDao.update(user, User.Attr.NAME);
+        assertEquals(0, cachingDao.size());
+
+        cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+        cachingDao.findByEmail(user.getEmail(), false);
+        verify(dao, times(2)).findByTheKeyGuid(user.getTheKeyGuid(), false);
+        verify(dao, times(2)).findByEmail(user.getEmail(), false);
+    }
+
+    @Test
+    public void verifyDeactivateInvalidatesPreviousIdentifiers() {
+        cachingDao.findByEmail(user.getEmail(), false);
+        assertEquals(1, cachingDao.size());
+
+        cachingDao.deactivate(user);
+        assertEquals(0, cachingDao.size());
+    }
+
+    @Test
+    public void verifyKeysAreCaseInsensitive() {
+        final String email = user.getEmail().toUpperCase(Locale.US);
+        when(dao.findByEmail(eq(email), anyBoolean())).thenReturn(user);
+        cachingDao.findByEmail(email, false);
+        cachingDao.findByEmail(user.getEmail(), false);
+        verify(dao, times(1)).findByEmail(email, false);
+        verify(dao, times(0)).findByEmail(user.getEmail(), false);
+
+        // invalidating the current identifiers of a different user matches regardless of case
+        final User other = newUser();
+        other.setEmail(user.getEmail());
+        cachingDao.invalidate(other);
+        assertEquals(0, cachingDao.size());
+    }
+
+    @Test
+    public void verifyLoadRacingWithUpdateIsNotCached() {
+        when(dao.findByTheKeyGuid(eq(user.getTheKeyGuid()), anyBoolean())).thenAnswer(i -> {
+            // the user is updated after it was read but before the lookup returned
+            cachingDao.update(user, User.Attr.NAME);
+            return user;
+        });
+
+        assertEquals(user, cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false));
+        assertEquals(0, cachingDao.size());
+    }
+
+    @Test
+    public void verifyReplacedEntryIsStillInvalidated() {
+        when(dao.findAllByEmails(anyCollection(), anyBoolean())).thenAnswer(i -> {
+            // a concurrent single lookup caches the same key while the batch lookup is running
+            cachingDao.findByEmail(user.getEmail(), false);
+            return ImmutableMap.of(user.getEmail(), user);
+        });
+
+        cachingDao.findAllByEmails(Collections.singleton(user.getEmail()), false);
+        assertEquals(1, cachingDao.size());
+
+        cachingDao.update(user, User.Attr.NAME);
+        assertEquals(0, cachingDao.size());
+    }
+}
@@ -0,0 +1,64 @@
+package org.ccci.idm.user.query;
+
+import static org.ccci.idm.user.query.Attribute.EMAIL_ALIAS;
+import static org.ccci.idm.user.query.Attribute.FIRST_NAME;
+import static org.ccci.idm.user.query.Attribute.GUID;
+import static org.ccci.idm.user.query.Attribute.LAST_NAME;
+import static org.ccci.idm.user.query.ExpressionNormalizer.normalize;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+public class ExpressionNormalizerTest {
+    private static final Expression A = FIRST_NAME.eq("a");
+    private static final Expression B = LAST_NAME.eq("b");
+    private static final Expression C = EMAIL_ALIAS.like("c*");
+    private static final Set<Attribute> SINGLE_VALUED = EnumSet.of(FIRST_NAME);
+
+    @Test
+    public void verifyNull() {
+        assertNull(normalize(null));
+    }
+
+    @Test
+    public void verifyFlattenAndDeduplicate() {
+        final Expression normalized = normalize(A.and(B.and(C, A)).and(FIRST_NAME.eq("a")));
+        assertThat(normalized, instanceOf(BooleanExpression.class));
+        assertEquals(BooleanExpression.Type.AND, ((BooleanExpression) normalized).getType());
+        assertThat(((BooleanExpression) normalized).getComponents(), contains(A, B, C));
+
+        assertEquals(A, normalize(A.or(A)));
+    }
+
+    @Test
+    public void verifyPushDownNot() {
+        assertEquals(A.not().or(B.not().and(C)), normalize(A.and(B.or(C.not())).not()));
+        assertEquals(A, normalize(new NotExpression(new NotExpression(A))));
+    }
+
+    @Test
+    public void verifyConstants() {
+        assertSame(ConstantExpression.FALSE, normalize(A.and(B, A.not())));
+        assertSame(ConstantExpression.TRUE, normalize(A.or(B, A.not())));
+        assertSame(ConstantExpression.FALSE, normalize(A.and(B.or(C), FIRST_NAME.eq("x")), SINGLE_VALUED));
+        assertSame(ConstantExpression.TRUE, normalize(A.and(B, FIRST_NAME.eq("x")).not(), SINGLE_VALUED));
+        assertSame(ConstantExpression.FALSE, normalize(GUID.eq("a").and(GUID.eq("b"))));
+
+        // constants are absorbed by the enclosing expression
+        assertEquals(C, normalize(C.or(A.and(A.not()))));
+        assertEquals(C, normalize(C.and(A.or(A.not()))));
+
+        // equality is case-insensitive, multi-valued attributes can match several values
+        assertThat(normalize(A.and(FIRST_NAME.eq("A")), SINGLE_VALUED), instanceOf(BooleanExpression.class));
+        assertThat(normalize(A.and(FIRST_NAME.eq("x"))), instanceOf(BooleanExpression.class));
+        assertThat(normalize(EMAIL_ALIAS.eq("x").and(EMAIL_ALIAS.eq("y"))), instanceOf(BooleanExpression.class));
+    }
+}
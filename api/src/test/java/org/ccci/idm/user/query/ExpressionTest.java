@@ -0,0 +1,63 @@
+package org.ccci.idm.user.query;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.ccci.idm.user.User;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+public class ExpressionTest {
+    @Test
+    public void verifyCompiledComparisons() {
+        final User user = new User();
+        user.setEmail("Jane.Doe@Example.com");
+        user.setFirstName("Jane");
+        user.setCruProxyAddresses(Arrays.asList("jdoe@example.com", "jane@example.org"));
+
+        assertTrue(Attribute.EMAIL.eq("jane.doe@example.com").compile().test(user));
+        assertFalse(Attribute.EMAIL.eq("jane.doe@example").compile().test(user));
+        assertTrue(Attribute.EMAIL.sw("JANE.").compile().test(user));
+        assertFalse(Attribute.LAST_NAME.eq("Doe").compile().test(user));
+        assertTrue(Attribute.LAST_NAME.sw("").compile().test(user));
+        assertTrue(Attribute.EMAIL_ALIAS.eq("JANE@example.org").compile().test(user));
+        assertTrue(Attribute.EMAIL_ALIAS.like("*@example.org").compile().test(user));
+        assertFalse(Attribute.EMAIL_ALIAS.like("*@cru.org").compile().test(user));
+    }
+
+    @Test
+    public void verifyLike() {
+        final User user = new User();
+        user.setEmail("Jane.Doe@Example.com");
+
+        for (final String pattern : new String[]{"jane.doe@example.com", "*", "j*", "*.COM", "j*doe*com", "*e*e*e*",
+                "jane*@*.com"}) {
+            assertTrue(pattern, Attribute.EMAIL.like(pattern).matches(user));
+        }
+        for (final String pattern : new String[]{"jane", "*.org", "doe*", "j*z*com", "jane.doe@example.com*x",
+                "*com*com"}) {
+            assertFalse(pattern, Attribute.EMAIL.like(pattern).matches(user));
+        }
+
+        // like never matches a missing value
+        assertFalse(Attribute.LAST_NAME.like("*").matches(user));
+    }
+
+    @Test
+    public void verifyCompiledBooleanExpressions() {
+        final User user = new User();
+        user.setFirstName("Jane");
+        user.setLastName("Doe");
+
+        final Expression first = Attribute.FIRST_NAME.eq("jane");
+        final Expression last = Attribute.LAST_NAME.eq("smith");
+        final Predicate<User> nested = first.and(last.or(Attribute.LAST_NAME.sw("d")), first.and(first)).compile();
+        assertTrue(nested.test(user));
+        assertFalse(first.and(last).compile().test(user));
+        assertTrue(first.or(last).compile().test(user));
+        assertTrue(last.not().compile().test(user));
+        assertFalse(first.and(last.not()).not().compile().test(user));
+    }
+}
@@ -0,0 +1,153 @@
+package org.ccci.idm.user.util;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+public class StreamPublisherTest {
+    @Test
+    public void verifyBackpressure() {
+        final AtomicInteger pulled = new AtomicInteger();
+        final AtomicBoolean closed = new AtomicBoolean();
+        final StreamPublisher<Integer> publisher = new StreamPublisher<>(() -> Stream.of(1, 2, 3, 4, 5)
+                .peek(i -> pulled.incrementAndGet())
+                .onClose(() -> closed.set(true)));
+
+        final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        publisher.subscribe(subscriber);
+
+        // the stream isn't opened until demand is signalled
+        assertEquals(0, pulled.get());
+        assertThat(subscriber.items, empty());
+
+        subscriber.subscription.request(2);
+        assertThat(subscriber.items, contains(1, 2));
+        assertEquals(2, pulled.get());
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(10);
+        assertThat(subscriber.items, contains(1, 2, 3, 4, 5));
+        assertTrue(subscriber.completed);
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void verifyCancelClosesStream() {
+        final AtomicBoolean closed = new AtomicBoolean();
+        final StreamPublisher<Integer> publisher =
+                new StreamPublisher<>(() -> Stream.of(1, 2, 3).onClose(() -> closed.set(true)));
+
+        final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(1);
+        subscriber.subscription.cancel();
+
+        assertThat(subscriber.items, contains(1));
+        assertTrue(closed.get());
+        assertFalse(subscriber.completed);
+
+        // no more items are delivered after cancellation
+        subscriber.subscription.request(1);
+        assertThat(subscriber.items, contains(1));
+    }
+
+    @Test
+    public void verifyInvalidRequest() {
+        final StreamPublisher<Integer> publisher = new StreamPublisher<>(() -> Stream.of(1, 2, 3));
+
+        final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+
+        assertThat(subscriber.error, instanceOf(IllegalArgumentException.class));
+        assertThat(subscriber.items, empty());
+    }
+
+    @Test
+    public void verifyStreamFailure() {
+        final StreamPublisher<Integer> publisher = new StreamPublisher<>(() -> Stream.of(1, 2).map(i -> {
+            if (i == 2) {
+                throw new IllegalStateException();
+            }
+            return i;
+        }));
+
+        final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertThat(subscriber.items, contains(1));
+        assertThat(subscriber.error, instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void verifyThrowingSubscriberCancelsSubscription() {
+        final AtomicInteger pulled = new AtomicInteger();
+        final AtomicBoolean closed = new AtomicBoolean();
+        final StreamPublisher<Integer> publisher = new StreamPublisher<>(() -> Stream.of(1, 2, 3)
+                .peek(i -> pulled.incrementAndGet())
+                .onClose(() -> closed.set(true)));
+
+        final RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<Integer>() {
+            @Override
+            public void onNext(final Integer item) {
+                super.onNext(item);
+                throw new IllegalStateException();
+            }
+        };
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        // the stream is closed and nothing else is pulled or signalled
+        assertThat(subscriber.items, contains(1));
+        assertTrue(closed.get());
+        subscriber.subscription.request(1);
+        subscriber.subscription.cancel();
+        assertThat(subscriber.items, contains(1));
+        assertEquals(1, pulled.get());
+        assertFalse(subscriber.completed);
+        assertThat(subscriber.error, nullValue());
+    }
+
+    private static class RecordingSubscriber<T> implements Subscriber<T> {
+        private final List<T> items = new ArrayList<>();
+        private Subscription subscription;
+        private Throwable error;
+        private boolean completed = false;
+
+        @Override
+        public void onSubscribe(final Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(final T item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(final Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
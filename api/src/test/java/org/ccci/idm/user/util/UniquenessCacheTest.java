@@ -0,0 +1,45 @@
+package org.ccci.idm.user.util;
+
+import static org.ccci.idm.user.TestUtil.guid;
+import static org.ccci.idm.user.TestUtil.newUser;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.ccci.idm.user.User;
+import org.ccci.idm.user.dao.UserDao;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.stream.Stream;
+
+public class UniquenessCacheTest {
+    private UniquenessCache cache;
+
+    @Before
+    public void setup() {
+        cache = new UniquenessCache();
+    }
+
+    @Test
+    public void verifyGeneratedGuidAvailability() {
+        final User existing = newUser();
+        final User created = newUser();
+        final String generated = guid();
+
+        // nothing is available until the filter has been built
+        assertFalse(cache.isGeneratedGuidAvailable(generated));
+
+        final UserDao dao = mock(UserDao.class);
+        when(dao.streamUsers(null, true)).thenReturn(Stream.of(existing));
+        cache.rebuild(dao);
+        assertTrue(cache.isGeneratedGuidAvailable(generated));
+        assertFalse(cache.isGeneratedGuidAvailable(existing.getGuid()));
+        assertFalse(cache.isGeneratedGuidAvailable(existing.getRelayGuid().toLowerCase()));
+        assertFalse(cache.isGeneratedGuidAvailable(existing.getTheKeyGuid()));
+
+        cache.markPresent(created);
+        assertFalse(cache.isGeneratedGuidAvailable(created.getTheKeyGuid()));
+    }
+}
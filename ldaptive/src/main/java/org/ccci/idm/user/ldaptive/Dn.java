@@ -7,7 +7,6 @@
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -19,6 +18,8 @@ public final class Dn implements Comparable<Dn>, Serializable {
 
     @Nonnull
     private final List<Component> components;
+    // cached hash code, 0 indicates the hash hasn't been calculated yet
+    private transient int hash;
 
     public Dn(@Nonnull final Component... components) {
         this.components = ImmutableList.copyOf(components);
@@ -47,8 +48,18 @@ public final boolean isDescendantOf(@Nonnull final Dn ancestor) {
      * @return true if the DN represented by this object is a descendant of or equal to the specified DN.
      */
     public final boolean isDescendantOfOrEqualTo(@Nonnull final Dn ancestor) {
-        return ancestor.components.size() <= components.size() &&
-                ancestor.components.equals(components.subList(0, ancestor.components.size()));
+        final int size = ancestor.components.size();
+        if (size > components.size()) {
+            return false;
+        }
+
+        // compare the deepest components first, ancestors typically share the same root components
+        for (int i = size - 1; i >= 0; i--) {
+            if (!components.get(i).equals(ancestor.components.get(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public final boolean isAncestorOf(@Nonnull final Dn descendant) {
@@ -102,12 +113,18 @@ public int compareTo(@Nonnull final Dn o) {
     @Override
     public boolean equals(final Object o) {
         if (this == o) { return true; }
-        return o != null && getClass().equals(o.getClass()) && components.equals(((Dn) o).components);
+        return o != null && getClass().equals(o.getClass()) && hashCode() == o.hashCode() &&
+                components.equals(((Dn) o).components);
     }
 
     @Override
     public int hashCode() {
-        return components.hashCode();
+        int h = hash;
+        if (h == 0) {
+            h = components.hashCode();
+            hash = h;
+        }
+        return h;
     }
 
     @Override
@@ -124,9 +141,24 @@ public static final class Component implements Comparable<Component>, Serializab
         @Nonnull
         public final String value;
 
+        // normalized (lowercase) forms used for comparisons & hashing
+        @Nonnull
+        private final transient String normalizedType;
+        @Nonnull
+        private final transient String normalizedValue;
+        private final transient int hash;
+
         public Component(@Nonnull final String type, @Nonnull final String value) {
             this.type = type;
             this.value = value;
+            normalizedType = type.toLowerCase(Locale.US);
+            normalizedValue = value.toLowerCase(Locale.US);
+            hash = 31 * (31 + normalizedType.hashCode()) + normalizedValue.hashCode();
+        }
+
+        private Object readResolve() {
+            // recalculate the transient normalized fields
+            return new Component(type, value);
         }
 
         @Override
@@ -143,12 +175,13 @@ public boolean equals(final Object o) {
             if (this == o) { return true; }
             if (!(o instanceof Component)) { return false; }
             final Component component = (Component) o;
-            return type.equalsIgnoreCase(component.type) && value.equalsIgnoreCase(component.value);
+            return hash == component.hash && normalizedValue.equals(component.normalizedValue) &&
+                    normalizedType.equals(component.normalizedType);
         }
 
         @Override
         public int hashCode() {
-            return Arrays.hashCode(new String[]{type.toLowerCase(Locale.US), value.toLowerCase(Locale.US)});
+            return hash;
         }
 
         @Override
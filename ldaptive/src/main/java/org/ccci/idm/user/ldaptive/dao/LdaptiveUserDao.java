@@ -25,9 +25,13 @@
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.ccci.idm.user.Group;
 import org.ccci.idm.user.SearchQuery;
+import org.ccci.idm.user.UniqueIdentifier;
 import org.ccci.idm.user.User;
 import org.ccci.idm.user.dao.exception.DaoException;
 import org.ccci.idm.user.dao.exception.ExceededMaximumAllowedResultsException;
@@ -40,15 +44,21 @@
 import org.ccci.idm.user.ldaptive.dao.filter.AndFilter;
 import org.ccci.idm.user.ldaptive.dao.filter.BaseFilter;
 import org.ccci.idm.user.ldaptive.dao.filter.EqualsFilter;
+import org.ccci.idm.user.ldaptive.dao.filter.FilterPlanner;
+import org.ccci.idm.user.ldaptive.dao.filter.FilterTemplate;
 import org.ccci.idm.user.ldaptive.dao.filter.LikeFilter;
 import org.ccci.idm.user.ldaptive.dao.filter.NotFilter;
 import org.ccci.idm.user.ldaptive.dao.filter.OrFilter;
+import org.ccci.idm.user.ldaptive.dao.filter.ParameterFilter;
 import org.ccci.idm.user.ldaptive.dao.filter.PresentFilter;
+import org.ccci.idm.user.ldaptive.dao.mapper.AbstractUserLdapEntryMapper;
 import org.ccci.idm.user.ldaptive.dao.util.DnUtils;
 import org.ccci.idm.user.ldaptive.dao.util.LdapUtils;
 import org.ccci.idm.user.query.BooleanExpression;
 import org.ccci.idm.user.query.ComparisonExpression;
+import org.ccci.idm.user.query.ConstantExpression;
 import org.ccci.idm.user.query.Expression;
+import org.ccci.idm.user.query.ExpressionNormalizer;
 import org.ccci.idm.user.query.NotExpression;
 import org.jetbrains.annotations.Contract;
 import org.ldaptive.AddOperation;
@@ -83,13 +93,24 @@
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.TreeMap;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -103,6 +124,38 @@ public class LdaptiveUserDao extends AbstractLdapUserDao {
             new EqualsFilter(LDAP_ATTR_OBJECTCLASS, LDAP_OBJECTCLASS_GROUP_OF_NAMES);
     private static final BaseFilter FILTER_DEACTIVATED = new LikeFilter(LDAP_ATTR_CN, LDAP_DEACTIVATED_PREFIX + "*");
     private static final BaseFilter FILTER_NOT_DEACTIVATED = FILTER_DEACTIVATED.not();
+    private static final BaseFilter FILTER_ALL = new PresentFilter(LDAP_ATTR_OBJECTCLASS);
+
+    // precompiled user lookup filters
+    private static final UserFilterTemplate TEMPLATE_GUID =
+            new UserFilterTemplate(i -> new ParameterFilter(LDAP_ATTR_GUID));
+    // relayGuid == {guid} || (guid == {guid} && relayGuid == null)
+    private static final UserFilterTemplate TEMPLATE_RELAY_GUID = new UserFilterTemplate(i ->
+            new ParameterFilter(LDAP_ATTR_RELAY_GUID).or(new ParameterFilter(LDAP_ATTR_GUID)
+                    .and(new PresentFilter(LDAP_ATTR_RELAY_GUID).not())));
+    // theKeyGuid == {guid} || (guid == {guid} && theKeyGuid == null)
+    private static final UserFilterTemplate TEMPLATE_THEKEY_GUID = new UserFilterTemplate(i ->
+            new ParameterFilter(LDAP_ATTR_THEKEY_GUID).or(new ParameterFilter(LDAP_ATTR_GUID)
+                    .and(new PresentFilter(LDAP_ATTR_THEKEY_GUID).not())));
+    private static final UserFilterTemplate TEMPLATE_FACEBOOKID =
+            new UserFilterTemplate(i -> new ParameterFilter(LDAP_ATTR_FACEBOOKID));
+    // (!deactivated && cn == {email}) || (includeDeactivated && deactivated && uid == {email})
+    private static final UserFilterTemplate TEMPLATE_EMAIL = new UserFilterTemplate(includeDeactivated -> {
+        final BaseFilter filter = FILTER_NOT_DEACTIVATED.and(new ParameterFilter(LDAP_ATTR_CN));
+        return includeDeactivated ?
+                filter.or(FILTER_DEACTIVATED.and(new ParameterFilter(LDAP_ATTR_USERID))) : filter;
+    });
+    private static final UserFilterTemplate TEMPLATE_DESIGNATION =
+            new UserFilterTemplate(i -> new ParameterFilter(LDAP_ATTR_CRU_DESIGNATION));
+    private static final UserFilterTemplate TEMPLATE_EMPLOYEE_NUMBER =
+            new UserFilterTemplate(i -> new ParameterFilter(LDAP_ATTR_EMPLOYEE_NUMBER));
+
+    // attributes always loaded for projected searches
+    private static final Set<String> PROJECTION_IDENTITY_ATTRIBUTES = ImmutableSet.of(LDAP_ATTR_CN, LDAP_ATTR_USERID,
+            LDAP_ATTR_OBJECTCLASS, LDAP_ATTR_GUID, LDAP_ATTR_RELAY_GUID, LDAP_ATTR_THEKEY_GUID);
+
+    // cn prefixes used to partition parallel directory scans
+    private static final String SCAN_PARTITION_PREFIXES = "0123456789abcdefghijklmnopqrstuvwxyz";
 
     @NotNull
     protected ConnectionFactory connectionFactory;
@@ -116,6 +169,17 @@ public class LdaptiveUserDao extends AbstractLdapUserDao {
     private Dn baseGroupDn = null;
 
     private int maxPageSize = 1000;
+    private int maxBatchLookupSize = 250;
+    private int updateAllConcurrency = 1;
+    private int maxGroupMembershipModifySize = 500;
+    @Nullable
+    private ExecutorService updateAllExecutor;
+
+    @Nonnull
+    private List<String> parallelScanDns = Collections.emptyList();
+
+    @Nullable
+    private FilterPlanner filterPlanner = new FilterPlanner();
 
     public void setConnectionFactory(final ConnectionFactory factory) {
         this.connectionFactory = factory;
@@ -141,6 +205,46 @@ public void setMaxPageSize(final int size) {
         this.maxPageSize = size;
     }
 
+    public void setMaxBatchLookupSize(final int size) {
+        this.maxBatchLookupSize = size;
+    }
+
+    public void setUpdateAllConcurrency(final int concurrency) {
+        this.updateAllConcurrency = concurrency;
+    }
+
+    /**
+     * Set the maximum number of values modified in a single group membership modify request.
+     */
+    public void setMaxGroupMembershipModifySize(final int size) {
+        this.maxGroupMembershipModifySize = size;
+    }
+
+    /**
+     * Set the executor used to update slices of users concurrently in {@link #updateAll(List, User.Attr...)}. The
+     * executor is owned by the caller and never shut down by this DAO. When no executor is set each updateAll call
+     * uses its own pool of up to updateAllConcurrency threads, which is shut down once the call completes.
+     */
+    public void setUpdateAllExecutor(@Nullable final ExecutorService executor) {
+        this.updateAllExecutor = executor;
+    }
+
+    /**
+     * Set the sub-DNs of the baseSearchDn used as partitions by {@link #streamUsersPartitioned}. These need to contain
+     * all users to be searched and can't overlap each other. When no sub-DNs are configured the directory is
+     * partitioned by cn prefix.
+     */
+    public void setParallelScanDns(@Nullable final Collection<String> dns) {
+        this.parallelScanDns = dns != null ? new ArrayList<>(dns) : Collections.emptyList();
+    }
+
+    /**
+     * Set the planner used to order user search filters by their estimated evaluation cost, null disables planning.
+     */
+    public void setFilterPlanner(@Nullable final FilterPlanner planner) {
+        this.filterPlanner = planner;
+    }
+
     private void assertValidBaseGroupDn() {
         if (baseGroupDn == null) {
             throw new UnsupportedOperationException(
@@ -173,7 +277,7 @@ private LdapGroup checkValidGroup(@Nonnull final Group group) {
      * find {@link User} objects that match the provided filter. This method should not be considered part of the public
      * API. This is currently exposed publicly as a quick path for advanced search in admin tools.
      *
-     * @param filter                    the LDAP search filter to use when searching
+     * @param preparedFilter            the prepared LDAP search filter to use when searching
      * @param limit                     the maximum number of results to return, a limit of 0 indicates that all results
      *                                  should be returned
      * @param restrictMaxAllowedResults a flag indicating if maxSearchResults should be observed
@@ -181,10 +285,10 @@ private LdapGroup checkValidGroup(@Nonnull final Group group) {
      * @throws ExceededMaximumAllowedResultsException exception thrown when there are more results than the maximum
      */
     @Nonnull
-    private List<User> findAllByFilter(@Nullable BaseFilter filter, final boolean includeDeactivated, final int limit,
-                                       final boolean restrictMaxAllowedResults)
+    private List<User> findAllByPreparedFilter(@Nonnull final BaseFilter preparedFilter, final int limit,
+                                               final boolean restrictMaxAllowedResults)
             throws ExceededMaximumAllowedResultsException {
-        try (Stream<User> users = streamUsersByFilter(filter, includeDeactivated, limit, restrictMaxAllowedResults)) {
+        try (Stream<User> users = streamUsersByPreparedFilter(preparedFilter, limit, restrictMaxAllowedResults, null)) {
             return users.collect(Collectors.toList());
         } catch (final ExceededMaximumAllowedResultsException e) {
             // propagate ExceededMaximumAllowedResultsException exceptions
@@ -206,13 +310,35 @@ private List<User> findAllByFilter(@Nullable BaseFilter filter, final boolean in
     @Nonnull
     private Stream<User> streamUsersByFilter(@Nullable final BaseFilter filter, final boolean includeDeactivated,
                                              final int limit, final boolean restrictMaxAllowedResults) {
-        final BaseFilter preparedFilter = prepareUserFilter(filter, includeDeactivated);
+        return streamUsersByFilter(filter, includeDeactivated, limit, restrictMaxAllowedResults, null);
+    }
 
-        // build search request
-        final SearchRequest request = new SearchRequest(baseSearchDn, preparedFilter);
-        request.setReturnAttributes("*", LDAP_ATTR_PASSWORDCHANGEDTIME);
+    /**
+     * @param projection the User attributes to load, null indicates that all attributes should be loaded
+     * @see #streamUsersByFilter(BaseFilter, boolean, int, boolean)
+     */
+    @Nonnull
+    private Stream<User> streamUsersByFilter(@Nullable final BaseFilter filter, final boolean includeDeactivated,
+                                             final int limit, final boolean restrictMaxAllowedResults,
+                                             @Nullable final Set<User.Attr> projection) {
+        BaseFilter preparedFilter = prepareUserFilter(filter, includeDeactivated);
+        if (filterPlanner != null) {
+            preparedFilter = filterPlanner.plan(preparedFilter);
+        }
+        return streamUsersByPreparedFilter(preparedFilter, limit, restrictMaxAllowedResults, projection);
+    }
 
+    /**
+     * @param preparedFilter the LDAP search filter to use when searching, already restricted to (active) users
+     * @see #streamUsersByFilter(BaseFilter, boolean, int, boolean, Set)
+     */
+    @Nonnull
+    private Stream<User> streamUsersByPreparedFilter(@Nonnull final BaseFilter preparedFilter, final int limit,
+                                                     final boolean restrictMaxAllowedResults,
+                                                     @Nullable final Set<User.Attr> projection) {
         // Stream search request
+        final SearchRequest request = new SearchRequest(baseSearchDn, preparedFilter);
+        request.setReturnAttributes(getReturnAttributes(projection));
         Stream<LdapEntry> stream = streamSearchRequest(request, calculatePageSize(limit, restrictMaxAllowedResults));
         if (restrictMaxAllowedResults && maxSearchResults != SEARCH_NO_LIMIT) {
             final AtomicInteger count = new AtomicInteger(0);
@@ -227,14 +353,79 @@ private Stream<User> streamUsersByFilter(@Nullable final BaseFilter filter, fina
         if (limit != SEARCH_NO_LIMIT) {
             stream = stream.limit(limit);
         }
-        return stream.map(e -> {
-            final User user = new User();
-            userMapper.map(e, user);
-            return user;
-        });
+        return projection != null ? stream.map(entry -> mapUser(entry, projection)) : stream.map(this::mapUser);
+    }
+
+    /**
+     * Export all users matching the expression using a partitioned directory scan. The returned Stream is backed by a
+     * splittable Spliterator that runs one paged search per partition on its own connection, so calling
+     * {@link Stream#parallel()} will scan the partitions concurrently. The partitions are disjoint, so every user
+     * is only included once.
+     *
+     * @param expression         the expression users need to match, null matches all users
+     * @param includeDeactivated whether deactivated users should be included with the results
+     * @param projection         the User attributes to load, null indicates that all attributes should be loaded
+     * @return a stream with all User's matching the expression
+     * @throws IllegalStateException when a configured parallelScanDn is not within the baseSearchDn, or overlaps
+     *                               another parallelScanDn
+     */
+    @Nonnull
+    public Stream<User> streamUsersPartitioned(@Nullable final Expression expression, final boolean includeDeactivated,
+                                               @Nullable final Set<User.Attr> projection) {
+        BaseFilter preparedFilter = prepareUserFilter(
+                convertExpressionToFilter(ExpressionNormalizer.normalize(expression)), includeDeactivated);
+        if (filterPlanner != null) {
+            preparedFilter = filterPlanner.plan(preparedFilter);
+        }
+
+        final Stream<LdapEntry> stream = streamPartitionedSearch(
+                buildScanPartitions(preparedFilter, getReturnAttributes(projection)),
+                calculatePageSize(SEARCH_NO_LIMIT, false));
+        return projection != null ? stream.map(entry -> mapUser(entry, projection)) : stream.map(this::mapUser);
+    }
+
+    @Nonnull
+    private String[] getReturnAttributes(@Nullable final Set<User.Attr> projection) {
+        return projection != null ? getProjectionReturnAttributes(projection) :
+                new String[]{"*", LDAP_ATTR_PASSWORDCHANGEDTIME};
+    }
+
+    @Nonnull
+    private User mapUser(@Nonnull final LdapEntry entry) {
+        final User user = new User();
+        userMapper.map(entry, user);
+        return user;
+    }
+
+    @Nonnull
+    private User mapUser(@Nonnull final LdapEntry entry, @Nonnull final Set<User.Attr> projection) {
+        if (!(userMapper instanceof AbstractUserLdapEntryMapper)) {
+            return mapUser(entry);
+        }
+
+        final User user = new User();
+        ((AbstractUserLdapEntryMapper<User>) userMapper).map(entry, user, projection);
+        return user;
+    }
+
+    /**
+     * Translate a User attribute projection into the LDAP attributes that need to be returned, this is the attribute
+     * mask used for updates along with the attributes used to identify a user.
+     */
+    @Nonnull
+    @VisibleForTesting
+    String[] getProjectionReturnAttributes(@Nonnull final Set<User.Attr> projection) {
+        final Set<String> attributes = new LinkedHashSet<>(PROJECTION_IDENTITY_ATTRIBUTES);
+        if (!projection.isEmpty()) {
+            attributes.addAll(getAttributeMask(projection.toArray(new User.Attr[0])));
+        }
+        if (projection.contains(User.Attr.PASSWORD)) {
+            attributes.add(LDAP_ATTR_PASSWORDCHANGEDTIME);
+        }
+        return attributes.toArray(new String[0]);
     }
 
-    private BaseFilter prepareUserFilter(@Nullable BaseFilter filter, final boolean includeDeactivated) {
+    private static BaseFilter prepareUserFilter(@Nullable BaseFilter filter, final boolean includeDeactivated) {
         filter = filter != null ? filter.and(FILTER_PERSON) : FILTER_PERSON;
         if (!includeDeactivated) {
             filter = filter.and(FILTER_NOT_DEACTIVATED);
@@ -242,8 +433,9 @@ private BaseFilter prepareUserFilter(@Nullable BaseFilter filter, final boolean
         return filter;
     }
 
-    private User findByFilter(final BaseFilter filter, final boolean includeDeactivated) {
-        final List<User> results = findAllByFilter(filter, includeDeactivated, 1, false);
+    private User findByTemplate(final UserFilterTemplate template, final boolean includeDeactivated,
+                                final String... values) {
+        final List<User> results = findAllByPreparedFilter(template.apply(includeDeactivated, values), 1, false);
         return results.size() > 0 ? results.get(0) : null;
     }
 
@@ -289,52 +481,206 @@ public List<User> findAllByQuery(@Nonnull final SearchQuery query) throws DaoExc
     @Override
     @Deprecated
     public User findByGuid(final String guid, final boolean includeDeactivated) {
-        return this.findByFilter(new EqualsFilter(LDAP_ATTR_GUID, guid), includeDeactivated);
+        return this.findByTemplate(TEMPLATE_GUID, includeDeactivated, guid);
     }
 
     @Override
     public User findByRelayGuid(final String guid, final boolean includeDeactivated) {
-        // relayGuid == {guid} || (guid == {guid} && relayGuid == null)
-        return this.findByFilter(new EqualsFilter(LDAP_ATTR_RELAY_GUID, guid).or(new EqualsFilter(LDAP_ATTR_GUID,
-                guid).and(new PresentFilter(LDAP_ATTR_RELAY_GUID).not())), includeDeactivated);
+        return this.findByTemplate(TEMPLATE_RELAY_GUID, includeDeactivated, guid);
     }
 
     @Nullable
     @Override
     public User findByTheKeyGuid(final String guid, final boolean includeDeactivated) {
-        // theKeyGuid == {guid} || (guid == {guid} && theKeyGuid == null)
-        return this.findByFilter(new EqualsFilter(LDAP_ATTR_THEKEY_GUID, guid).or(new EqualsFilter(LDAP_ATTR_GUID,
-                guid).and(new PresentFilter(LDAP_ATTR_THEKEY_GUID).not())), includeDeactivated);
+        return this.findByTemplate(TEMPLATE_THEKEY_GUID, includeDeactivated, guid);
     }
 
     @Override
     public User findByFacebookId(final String id, final boolean includeDeactivated) {
-        return this.findByFilter(new EqualsFilter(LDAP_ATTR_FACEBOOKID, id), includeDeactivated);
+        return this.findByTemplate(TEMPLATE_FACEBOOKID, includeDeactivated, id);
     }
 
     @Override
     public User findByEmail(final String email, final boolean includeDeactivated) {
-        // filter = (!deactivated && cn = email)
-        BaseFilter filter = FILTER_NOT_DEACTIVATED.and(new EqualsFilter(LDAP_ATTR_CN, email));
-
-        // filter = (filter || (deactivated && uid = email))
-        if (includeDeactivated) {
-            filter = filter.or(FILTER_DEACTIVATED.and(new EqualsFilter(LDAP_ATTR_USERID, email)));
-        }
-
-        // Execute search & return results
-        return this.findByFilter(filter, includeDeactivated);
+        return this.findByTemplate(TEMPLATE_EMAIL, includeDeactivated, email);
     }
 
     @Nullable
     @Override
     public User findByDesignation(@Nullable final String designation, final boolean includeDeactivated) {
-        return findByFilter(new EqualsFilter(LDAP_ATTR_CRU_DESIGNATION, designation), includeDeactivated);
+        return findByTemplate(TEMPLATE_DESIGNATION, includeDeactivated, designation);
     }
 
     @Override
     public User findByEmployeeId(final String employeeId, final boolean includeDeactivated) {
-        return this.findByFilter(new EqualsFilter(LDAP_ATTR_EMPLOYEE_NUMBER, employeeId), includeDeactivated);
+        return this.findByTemplate(TEMPLATE_EMPLOYEE_NUMBER, includeDeactivated, employeeId);
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, User> findAllByTheKeyGuids(@Nonnull final Collection<String> guids,
+                                                  final boolean includeDeactivated) {
+        // theKeyGuid == {guid} || (guid == {guid} && theKeyGuid == null)
+        return findAllByBatch(guids, includeDeactivated, guid -> new EqualsFilter(LDAP_ATTR_THEKEY_GUID, guid)
+                .or(new EqualsFilter(LDAP_ATTR_GUID, guid).and(new PresentFilter(LDAP_ATTR_THEKEY_GUID).not())),
+                User::getTheKeyGuid);
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, User> findAllByEmails(@Nonnull final Collection<String> emails,
+                                             final boolean includeDeactivated) {
+        return findAllByBatch(emails, includeDeactivated, email -> {
+            // filter = (!deactivated && cn = email)
+            BaseFilter filter = FILTER_NOT_DEACTIVATED.and(new EqualsFilter(LDAP_ATTR_CN, email));
+
+            // filter = (filter || (deactivated && uid = email))
+            if (includeDeactivated) {
+                filter = filter.or(FILTER_DEACTIVATED.and(new EqualsFilter(LDAP_ATTR_USERID, email)));
+            }
+            return filter;
+        }, User::getEmail);
+    }
+
+    /**
+     * Find users for a batch of values. Values are chunked into OR filters of at most maxBatchLookupSize values, and
+     * all chunks are searched using a single connection.
+     *
+     * @param values             the values being searched for
+     * @param includeDeactivated whether deactivated users should be included with the results
+     * @param filter             function generating the filter to find a user by a single value
+     * @param key                function extracting the matched value from a found user
+     * @return a map of the requested values to the found users
+     */
+    @Nonnull
+    private Map<String, User> findAllByBatch(@Nonnull final Collection<String> values, final boolean includeDeactivated,
+                                             @Nonnull final Function<String, BaseFilter> filter,
+                                             @Nonnull final Function<User, String> key) {
+        // index requested values by their normalized form, LDAP equality matching is case-insensitive
+        final Map<String, List<String>> requested = values.stream()
+                .filter(v -> v != null)
+                .distinct()
+                .collect(Collectors.groupingBy(v -> v.toLowerCase(Locale.US), LinkedHashMap::new,
+                        Collectors.toList()));
+        final Map<String, User> users = new LinkedHashMap<>();
+        if (requested.isEmpty()) {
+            return users;
+        }
+
+        Connection conn = null;
+        try {
+            conn = this.connectionFactory.getConnection();
+            conn.open();
+
+            for (final List<String> chunk : Iterables.partition(requested.keySet(), maxBatchLookupSize)) {
+                final BaseFilter[] filters = chunk.stream().map(filter).toArray(BaseFilter[]::new);
+                final SearchRequest request =
+                        new SearchRequest(baseSearchDn, prepareUserFilter(new OrFilter(filters), includeDeactivated));
+                request.setReturnAttributes("*", LDAP_ATTR_PASSWORDCHANGEDTIME);
+
+                final Iterator<LdapEntry> entries =
+                        searchRequestIterator(conn, request, calculatePageSize(SEARCH_NO_LIMIT, false));
+                while (entries.hasNext()) {
+                    final User user = mapUser(entries.next());
+                    final String value = key.apply(user);
+                    if (value == null) {
+                        continue;
+                    }
+
+                    // prefer active users when a value matches multiple users
+                    for (final String original : requested.getOrDefault(value.toLowerCase(Locale.US),
+                            Collections.emptyList())) {
+                        users.merge(original, user, (existing, found) ->
+                                existing.isDeactivated() && !found.isDeactivated() ? found : existing);
+                    }
+                }
+            }
+        } catch (final LdapException e) {
+            throw new LdaptiveDaoException(e);
+        } finally {
+            LdapUtils.closeConnection(conn);
+        }
+        return users;
+    }
+
+    @Nonnull
+    @Override
+    public Set<UniqueIdentifier> findExistingIdentifiers(@Nonnull final Map<UniqueIdentifier, String> identifiers) {
+        // build a single filter matching any user using one of the specified identifiers
+        final List<BaseFilter> filters = new ArrayList<>();
+        identifiers.forEach((type, value) -> {
+            if (value != null) {
+                filters.add(uniqueIdentifierFilter(type, value));
+            }
+        });
+        final Set<UniqueIdentifier> existing = EnumSet.noneOf(UniqueIdentifier.class);
+        if (filters.isEmpty()) {
+            return existing;
+        }
+
+        // only request the attributes needed to determine which identifiers are in use
+        final BaseFilter filter = new OrFilter(filters.toArray(new BaseFilter[0]));
+        final SearchRequest request = new SearchRequest(baseSearchDn, prepareUserFilter(filter, true));
+        request.setReturnAttributes(LDAP_ATTR_CN, LDAP_ATTR_GUID, LDAP_ATTR_RELAY_GUID, LDAP_ATTR_THEKEY_GUID);
+        try (Stream<LdapEntry> entries = streamSearchRequest(request, calculatePageSize(SEARCH_NO_LIMIT, false))) {
+            entries.forEach(entry -> identifiers.forEach((type, value) -> {
+                if (value != null && isUniqueIdentifierMatch(entry, type, value)) {
+                    existing.add(type);
+                }
+            }));
+        }
+        return existing;
+    }
+
+    @Nonnull
+    private static BaseFilter uniqueIdentifierFilter(@Nonnull final UniqueIdentifier type,
+                                                     @Nonnull final String value) {
+        switch (type) {
+            case EMAIL:
+                return FILTER_NOT_DEACTIVATED.and(new EqualsFilter(LDAP_ATTR_CN, value));
+            case GUID:
+                return new EqualsFilter(LDAP_ATTR_GUID, value);
+            case RELAY_GUID:
+                // relayGuid == {guid} || (guid == {guid} && relayGuid == null)
+                return new EqualsFilter(LDAP_ATTR_RELAY_GUID, value).or(new EqualsFilter(LDAP_ATTR_GUID, value)
+                        .and(new PresentFilter(LDAP_ATTR_RELAY_GUID).not()));
+            case THEKEY_GUID:
+                // theKeyGuid == {guid} || (guid == {guid} && theKeyGuid == null)
+                return new EqualsFilter(LDAP_ATTR_THEKEY_GUID, value).or(new EqualsFilter(LDAP_ATTR_GUID, value)
+                        .and(new PresentFilter(LDAP_ATTR_THEKEY_GUID).not()));
+            default:
+                throw new IllegalArgumentException("Unrecognized UniqueIdentifier: " + type);
+        }
+    }
+
+    private static boolean isUniqueIdentifierMatch(@Nonnull final LdapEntry entry,
+                                                   @Nonnull final UniqueIdentifier type, @Nonnull final String value) {
+        switch (type) {
+            case EMAIL:
+                final LdapAttribute cn = entry.getAttribute(LDAP_ATTR_CN);
+                return cn != null && cn.getStringValues().stream().anyMatch(value::equalsIgnoreCase);
+            case GUID:
+                return value.equalsIgnoreCase(getStringValue(entry, LDAP_ATTR_GUID));
+            case RELAY_GUID:
+                return isGuidWithFallbackMatch(entry, LDAP_ATTR_RELAY_GUID, value);
+            case THEKEY_GUID:
+                return isGuidWithFallbackMatch(entry, LDAP_ATTR_THEKEY_GUID, value);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isGuidWithFallbackMatch(@Nonnull final LdapEntry entry, @Nonnull final String attrName,
+                                                   @Nonnull final String value) {
+        final String guid = getStringValue(entry, attrName);
+        return guid != null ? value.equalsIgnoreCase(guid) : value.equalsIgnoreCase(getStringValue(entry,
+                LDAP_ATTR_GUID));
+    }
+
+    @Nullable
+    private static String getStringValue(@Nonnull final LdapEntry entry, @Nonnull final String attrName) {
+        final LdapAttribute attr = entry.getAttribute(attrName);
+        return attr != null ? attr.getStringValue() : null;
     }
 
     @Override
@@ -360,7 +706,16 @@ public int enqueueAll(@Nonnull final BlockingQueue<User> queue, final boolean in
     @Override
     public Stream<User> streamUsers(@Nullable final Expression expression, final boolean includeDeactivated,
                                     final boolean restrictMaxAllowed) {
-        return streamUsersByFilter(convertExpressionToFilter(expression), includeDeactivated, SEARCH_NO_LIMIT, restrictMaxAllowed);
+        return streamUsersByFilter(convertExpressionToFilter(ExpressionNormalizer.normalize(expression)),
+                includeDeactivated, SEARCH_NO_LIMIT, restrictMaxAllowed);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<User> streamUsers(@Nullable final Expression expression, final boolean includeDeactivated,
+                                    @Nonnull final Set<User.Attr> projection) {
+        return streamUsersByFilter(convertExpressionToFilter(ExpressionNormalizer.normalize(expression)),
+                includeDeactivated, SEARCH_NO_LIMIT, false, projection);
     }
 
     @Override
@@ -402,6 +757,114 @@ public void update(@Nonnull final User user, User.Attr... attrs) throws DaoExcep
         }
     }
 
+    /**
+     * Update several users. The users are split across up to updateAllConcurrency connections, with all modifications
+     * for a slice of users being sent sequentially over a single connection. Failures are reported the same way
+     * {@link #update(User, User.Attr...)} would throw them. If a slice fails outright, for example because its
+     * connection can't be opened, every user of that slice without a more specific failure is reported as failed.
+     * Invalid users are reported as failed instead of aborting the update of the remaining users.
+     */
+    @Nonnull
+    @Override
+    public Map<Integer, DaoException> updateAll(@Nonnull final List<User> users, final User.Attr... attrs) {
+        assertWritable();
+
+        final int concurrency = Math.max(1, Math.min(updateAllConcurrency, users.size()));
+        final int sliceSize = (users.size() + concurrency - 1) / concurrency;
+        final List<List<User>> slices = Lists.partition(users, Math.max(1, sliceSize));
+        if (slices.size() <= 1) {
+            return updateAllInternal(users, 0, attrs);
+        }
+
+        final ExecutorService shared = updateAllExecutor;
+        final ExecutorService executor = shared != null ? shared :
+                Executors.newFixedThreadPool(slices.size(),
+                        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ldaptive-update-all-%d").build());
+        final Map<Integer, DaoException> failures = new TreeMap<>();
+        try {
+            final List<Future<Map<Integer, DaoException>>> futures = new ArrayList<>();
+            for (int i = 0; i < slices.size(); i++) {
+                final List<User> slice = slices.get(i);
+                final int offset = i * sliceSize;
+                futures.add(executor.submit(() -> updateAllInternal(slice, offset, attrs)));
+            }
+
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        failures.putAll(futures.get(i).get());
+                    } catch (final ExecutionException e) {
+                        final DaoException failure = e.getCause() instanceof DaoException ?
+                                (DaoException) e.getCause() : new LdaptiveDaoException(e.getCause());
+                        LOG.debug("error updating a slice of users, continuing with remaining slices", failure);
+                        for (int j = 0; j < slices.get(i).size(); j++) {
+                            failures.putIfAbsent(i * sliceSize + j, failure);
+                        }
+                    }
+                }
+            } catch (final InterruptedException e) {
+                futures.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new InterruptedDaoException(e);
+            }
+        } finally {
+            if (executor != shared) {
+                executor.shutdown();
+            }
+        }
+        return failures;
+    }
+
+    @Nonnull
+    private Map<Integer, DaoException> updateAllInternal(@Nonnull final List<User> users, final int offset,
+                                                         final User.Attr... attrs) {
+        final Map<Integer, DaoException> failures = new TreeMap<>();
+        Connection conn = null;
+        try {
+            conn = this.connectionFactory.getConnection();
+            conn.open();
+
+            for (int i = 0; i < users.size(); i++) {
+                final User user = users.get(i);
+                try {
+                    assertValidUser(user);
+                } catch (final IllegalArgumentException e) {
+                    LOG.debug("invalid user at index {}, continuing with remaining users", offset + i, e);
+                    failures.put(offset + i, new LdaptiveDaoException(e));
+                    continue;
+                }
+
+                try {
+                    this.updateInternal(conn, this.userMapper.mapDn(user), user, attrs);
+                } catch (final LdapException e) {
+                    LOG.debug("error updating user {}, continuing with remaining users", user.getTheKeyGuid(), e);
+                    failures.put(offset + i, convertUpdateException(e));
+                }
+            }
+        } catch (final LdapException e) {
+            final DaoException failure = convertUpdateException(e);
+            for (int i = 0; i < users.size(); i++) {
+                failures.putIfAbsent(offset + i, failure);
+            }
+        } finally {
+            LdapUtils.closeConnection(conn);
+        }
+        return failures;
+    }
+
+    // convert an LdapException the same way update() does. The failures map can only hold DaoExceptions, so an already
+    // existing entry is wrapped instead of being thrown as a UserAlreadyExistsException.
+    @Nonnull
+    private DaoException convertUpdateException(@Nonnull final LdapException e) {
+        try {
+            return convertLdapException(e);
+        } catch (final DaoException converted) {
+            return converted;
+        } catch (final UserAlreadyExistsException converted) {
+            return new LdaptiveDaoException(converted);
+        }
+    }
+
     @Override
     public void update(@Nonnull final User original, @Nonnull final User user, final User.Attr... attrs)
             throws DaoException {
@@ -442,7 +905,18 @@ public void addToGroup(@Nonnull final User user, @Nonnull final Group group, fin
         assertValidUser(user);
         assertValidGroup(group);
 
-        modifyGroupMembership(AttributeModificationType.ADD, user, (LdapGroup) group, addSecurity);
+        modifyGroupMembership(AttributeModificationType.ADD, Collections.singletonList(user), (LdapGroup) group,
+                addSecurity);
+    }
+
+    @Override
+    public void addToGroup(@Nonnull final Collection<User> users, @Nonnull final Group group,
+                           final boolean addSecurity) throws DaoException {
+        assertWritable();
+        users.forEach(this::assertValidUser);
+        assertValidGroup(group);
+
+        modifyGroupMembership(AttributeModificationType.ADD, users, (LdapGroup) group, addSecurity);
     }
 
     @Override
@@ -451,7 +925,18 @@ public void removeFromGroup(@Nonnull final User user, @Nonnull final Group group
         assertValidUser(user);
         assertValidGroup(group);
 
-        modifyGroupMembership(AttributeModificationType.REMOVE, user, (LdapGroup) group, true);
+        modifyGroupMembership(AttributeModificationType.REMOVE, Collections.singletonList(user), (LdapGroup) group,
+                true);
+    }
+
+    @Override
+    public void removeFromGroup(@Nonnull final Collection<User> users, @Nonnull final Group group)
+            throws DaoException {
+        assertWritable();
+        users.forEach(this::assertValidUser);
+        assertValidGroup(group);
+
+        modifyGroupMembership(AttributeModificationType.REMOVE, users, (LdapGroup) group, true);
     }
 
     @Nullable
@@ -536,13 +1021,13 @@ private int enqueueGroupsByFilter(@Nonnull final Collection<Group> groups, @Null
                     if (dn != null && dn.isDescendantOfOrEqualTo(baseGroupDn) && dn.getComponents().size() > 0) {
                         if (groups instanceof BlockingQueue) {
                             try {
-                                ((BlockingQueue<Group>) groups).put(dn.asGroup());
+                                ((BlockingQueue<Group>) groups).put(DnUtils.toGroup(dn));
                             } catch (final InterruptedException e) {
                                 LOG.debug("Error adding group to the BlockingQueue, let's propagate the exception", e);
                                 throw new InterruptedDaoException(e);
                             }
                         } else {
-                            groups.add(dn.asGroup());
+                            groups.add(DnUtils.toGroup(dn));
                         }
                     }
                     processed++;
@@ -570,27 +1055,44 @@ private int enqueueGroupsByFilter(@Nonnull final Collection<Group> groups, @Null
         }
     }
 
-    private void modifyGroupMembership(@Nonnull final AttributeModificationType type, @Nonnull final User user,
-                                       @Nonnull final LdapGroup group, final boolean updateSecurity) throws DaoException {
+    private void modifyGroupMembership(@Nonnull final AttributeModificationType type,
+                                       @Nonnull final Collection<User> users, @Nonnull final LdapGroup group,
+                                       final boolean updateSecurity) throws DaoException {
+        if (users.isEmpty()) {
+            return;
+        }
+
         Connection conn = null;
         try {
             conn = this.connectionFactory.getConnection();
             conn.open();
 
-            final String userDn = userMapper.mapDn(user);
             final String groupDn = DnUtils.toString(group);
 
-            // modify user entry
-            modifyGroupMembershipEntry(conn, userDn, type, LDAP_ATTR_GROUPS, groupDn);
-            if (updateSecurity) {
-                modifyGroupMembershipEntry(conn, userDn, type, LDAP_ATTR_SECURITY_EQUALS, groupDn);
+            // modify the user entries first, then modify the group entry once with chunked values for every user entry
+            // modified. the group entry is modified even when a user entry fails, so it matches the users modified
+            final List<String> memberDns = new ArrayList<>(users.size());
+            final List<String> securityDns = new ArrayList<>(updateSecurity ? users.size() : 0);
+            try {
+                for (final User user : users) {
+                    final String userDn = userMapper.mapDn(user);
+                    modifyGroupMembershipEntry(conn, userDn, type, LDAP_ATTR_GROUPS, groupDn);
+                    memberDns.add(userDn);
+                    if (updateSecurity) {
+                        modifyGroupMembershipEntry(conn, userDn, type, LDAP_ATTR_SECURITY_EQUALS, groupDn);
+                        securityDns.add(userDn);
+                    }
+                }
+            } catch (final LdapException | RuntimeException e) {
+                try {
+                    modifyGroupMembershipGroupEntry(conn, groupDn, type, memberDns, securityDns);
+                } catch (final LdapException | RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
             }
 
-            // modify group entry
-            modifyGroupMembershipEntry(conn, groupDn, type, LDAP_ATTR_MEMBER, userDn);
-            if (updateSecurity) {
-                modifyGroupMembershipEntry(conn, groupDn, type, LDAP_ATTR_EQUIVALENT_TO_ME, userDn);
-            }
+            modifyGroupMembershipGroupEntry(conn, groupDn, type, memberDns, securityDns);
         } catch (final LdapException e) {
             throw convertLdapException(e);
         } finally {
@@ -598,6 +1100,61 @@ private void modifyGroupMembership(@Nonnull final AttributeModificationType type
         }
     }
 
+    private void modifyGroupMembershipGroupEntry(@Nonnull final Connection conn, @Nonnull final String groupDn,
+                                                 @Nonnull final AttributeModificationType type,
+                                                 @Nonnull final List<String> memberDns,
+                                                 @Nonnull final List<String> securityDns) throws LdapException {
+        modifyGroupMembershipEntry(conn, groupDn, type, LDAP_ATTR_MEMBER, memberDns);
+        modifyGroupMembershipEntry(conn, groupDn, type, LDAP_ATTR_EQUIVALENT_TO_ME, securityDns);
+    }
+
+    private boolean modifyGroupMembershipEntry(@Nonnull final Connection conn, @Nonnull final String dn,
+                                               @Nonnull final AttributeModificationType type,
+                                               @Nonnull final String name, @Nonnull final List<String> values)
+            throws LdapException {
+        if (values.isEmpty()) {
+            return false;
+        }
+        if (values.size() == 1) {
+            return modifyGroupMembershipEntry(conn, dn, type, name, values.get(0));
+        }
+
+        boolean modified = false;
+        for (final List<String> chunk : Lists.partition(values, Math.max(1, maxGroupMembershipModifySize))) {
+            modified |= modifyGroupMembershipChunk(conn, dn, type, name, chunk);
+        }
+        return modified;
+    }
+
+    private boolean modifyGroupMembershipChunk(@Nonnull final Connection conn, @Nonnull final String dn,
+                                               @Nonnull final AttributeModificationType type,
+                                               @Nonnull final String name, @Nonnull final List<String> values)
+            throws LdapException {
+        if (values.size() == 1) {
+            return modifyGroupMembershipEntry(conn, dn, type, name, values.get(0));
+        }
+
+        // attempt to modify all values of this chunk in a single modification
+        final LdapAttribute attribute = new LdapAttribute(name, values.toArray(new String[0]));
+        final AttributeModification[] modifications = {new AttributeModification(type, attribute)};
+        try {
+            new ModifyOperation(conn).execute(new ModifyRequest(dn, modifications));
+            return true;
+        } catch (final LdapException e) {
+            if (!isSuppressedGroupMembershipException(type, e)) {
+                throw e;
+            }
+        }
+
+        // some of the values in this chunk were already present (or missing), so fallback to modifying each value of
+        // this chunk individually
+        boolean modified = false;
+        for (final String value : values) {
+            modified |= modifyGroupMembershipEntry(conn, dn, type, name, value);
+        }
+        return modified;
+    }
+
     private boolean modifyGroupMembershipEntry(@Nonnull final Connection conn, @Nonnull final String dn,
                                                @Nonnull final AttributeModificationType type,
                                                @Nonnull final String name, @Nonnull final String value)
@@ -609,20 +1166,8 @@ private boolean modifyGroupMembershipEntry(@Nonnull final Connection conn, @Nonn
             return true;
         } catch (final LdapException e) {
             // check to see if we are suppressing this exception
-            final ResultCode code = e.getResultCode();
-            if (code != null) {
-                switch (e.getResultCode()) {
-                    case ATTRIBUTE_OR_VALUE_EXISTS:
-                        if (type == AttributeModificationType.ADD) {
-                            return false;
-                        }
-                        break;
-                    case NO_SUCH_ATTRIBUTE:
-                        if (type == AttributeModificationType.REMOVE) {
-                            return false;
-                        }
-                        break;
-                }
+            if (isSuppressedGroupMembershipException(type, e)) {
+                return false;
             }
 
             // propagate the exception otherwise
@@ -630,6 +1175,20 @@ private boolean modifyGroupMembershipEntry(@Nonnull final Connection conn, @Nonn
         }
     }
 
+    private static boolean isSuppressedGroupMembershipException(@Nonnull final AttributeModificationType type,
+                                                                @Nonnull final LdapException e) {
+        final ResultCode code = e.getResultCode();
+        if (code != null) {
+            switch (code) {
+                case ATTRIBUTE_OR_VALUE_EXISTS:
+                    return type == AttributeModificationType.ADD;
+                case NO_SUCH_ATTRIBUTE:
+                    return type == AttributeModificationType.REMOVE;
+            }
+        }
+        return false;
+    }
+
     private void updateInternal(final Connection conn, final String dn, final User user,
                                 User.Attr... attrs) throws LdapException {
         // generate the list of modifications to make for this account
@@ -665,6 +1224,8 @@ BaseFilter convertExpressionToFilter(@Nullable final Expression expression) {
             return new NotFilter(convertExpressionToFilter(((NotExpression) expression).getComponent()));
         } else if (expression instanceof ComparisonExpression) {
             return convertComparisonExpressionToFilter((ComparisonExpression) expression);
+        } else if (expression instanceof ConstantExpression) {
+            return ((ConstantExpression) expression).getValue() ? FILTER_ALL : FILTER_ALL.not();
         }
 
         throw new IllegalArgumentException("Unsupported search expression specified");
@@ -738,6 +1299,59 @@ Stream<LdapEntry> streamSearchRequest(@Nonnull final SearchRequest request, fina
                 .onClose(conn::close);
     }
 
+    @VisibleForTesting
+    Iterator<LdapEntry> searchRequestIterator(@Nonnull final Connection conn, @Nonnull final SearchRequest request,
+                                              final int pageSize) {
+        return new SearchRequestIterator(conn, request, pageSize);
+    }
+
+    /**
+     * Build the disjoint search requests used to partition a parallel directory scan. Partitions are either the
+     * configured sub-DNs, or a partition per cn prefix with a final partition for any entry not matching a prefix.
+     */
+    @Nonnull
+    @VisibleForTesting
+    List<SearchRequest> buildScanPartitions(@Nonnull final BaseFilter filter, final String... returnAttributes) {
+        final List<SearchRequest> partitions = new ArrayList<>();
+        if (!parallelScanDns.isEmpty()) {
+            final Dn base = DnUtils.toDn(baseSearchDn);
+            final List<Dn> scanDns = new ArrayList<>(parallelScanDns.size());
+            for (final String dn : parallelScanDns) {
+                final Dn scanDn = DnUtils.toDn(dn);
+                if (!scanDn.isDescendantOfOrEqualTo(base)) {
+                    throw new IllegalStateException("parallelScanDn " + dn + " is not within the baseSearchDn");
+                }
+                for (final Dn other : scanDns) {
+                    if (scanDn.isDescendantOfOrEqualTo(other) || other.isDescendantOfOrEqualTo(scanDn)) {
+                        throw new IllegalStateException("parallelScanDn " + dn + " overlaps another parallelScanDn");
+                    }
+                }
+                scanDns.add(scanDn);
+                partitions.add(new SearchRequest(dn, filter, returnAttributes));
+            }
+        } else {
+            // a user with multiple cn values can match several prefixes, so each prefix partition excludes users
+            // matching any earlier prefix to keep the partitions disjoint
+            final BaseFilter[] prefixes = new BaseFilter[SCAN_PARTITION_PREFIXES.length()];
+            for (int i = 0; i < prefixes.length; i++) {
+                prefixes[i] = new LikeFilter(LDAP_ATTR_CN, SCAN_PARTITION_PREFIXES.charAt(i) + "*");
+                final BaseFilter partition = i == 0 ? filter.and(prefixes[i]) :
+                        filter.and(prefixes[i], new OrFilter(Arrays.copyOf(prefixes, i)).not());
+                partitions.add(new SearchRequest(baseSearchDn, partition, returnAttributes));
+            }
+            partitions.add(new SearchRequest(baseSearchDn, filter.and(new OrFilter(prefixes).not()),
+                    returnAttributes));
+        }
+        return partitions;
+    }
+
+    @VisibleForTesting
+    Stream<LdapEntry> streamPartitionedSearch(@Nonnull final List<SearchRequest> partitions, final int pageSize) {
+        final PartitionedSearchSpliterator spliterator =
+                new PartitionedSearchSpliterator(connectionFactory, partitions, pageSize);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
     private DaoException convertLdapException(@Nonnull final LdapException e) {
         if (e.getResultCode() == ResultCode.ENTRY_ALREADY_EXISTS) {
             throw new UserAlreadyExistsException();
@@ -745,4 +1359,22 @@ private DaoException convertLdapException(@Nonnull final LdapException e) {
             throw new LdaptiveDaoException(e);
         }
     }
+
+    /**
+     * A user search filter template precompiled for both values of the includeDeactivated flag, including the
+     * person and deactivated restrictions applied by {@link #prepareUserFilter(BaseFilter, boolean)}.
+     */
+    private static final class UserFilterTemplate {
+        private final FilterTemplate active;
+        private final FilterTemplate all;
+
+        private UserFilterTemplate(final Function<Boolean, BaseFilter> filter) {
+            active = FilterTemplate.compile(prepareUserFilter(filter.apply(false), false));
+            all = FilterTemplate.compile(prepareUserFilter(filter.apply(true), true));
+        }
+
+        private BaseFilter apply(final boolean includeDeactivated, final String... values) {
+            return (includeDeactivated ? all : active).apply(values);
+        }
+    }
 }
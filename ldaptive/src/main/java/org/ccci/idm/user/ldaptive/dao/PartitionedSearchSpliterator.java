@@ -0,0 +1,146 @@
+package org.ccci.idm.user.ldaptive.dao;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.ccci.idm.user.ldaptive.dao.exception.LdaptiveDaoException;
+import org.ccci.idm.user.ldaptive.dao.util.LdapUtils;
+import org.ldaptive.Connection;
+import org.ldaptive.ConnectionFactory;
+import org.ldaptive.LdapEntry;
+import org.ldaptive.LdapException;
+import org.ldaptive.SearchRequest;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * A splittable {@link Spliterator} over the results of several disjoint {@link SearchRequest}s (partitions). Each
+ * partition is executed as a paged search on its own connection, which is only opened once the partition is first
+ * traversed. Splitting hands off half of the partitions that haven't been started yet, allowing a parallel Stream to
+ * scan the partitions concurrently.
+ *
+ * All connections opened by this spliterator, or any spliterator split from it, are closed by {@link #close()}.
+ */
+class PartitionedSearchSpliterator implements Spliterator<LdapEntry>, AutoCloseable {
+    @Nonnull
+    private final ConnectionFactory connectionFactory;
+    @Nonnull
+    private final BiFunction<Connection, SearchRequest, Iterator<LdapEntry>> iteratorFactory;
+    // connections that are currently open, shared with all spliterators split from this one
+    @Nonnull
+    private final Set<Connection> openConnections;
+
+    // partitions that haven't been started yet
+    @Nonnull
+    private List<SearchRequest> partitions;
+
+    @Nullable
+    private Connection connection;
+    @Nullable
+    private Iterator<LdapEntry> current;
+
+    PartitionedSearchSpliterator(@Nonnull final ConnectionFactory connectionFactory,
+                                 @Nonnull final List<SearchRequest> partitions, final int pageSize) {
+        this(connectionFactory, partitions, (conn, request) -> new SearchRequestIterator(conn, request, pageSize));
+    }
+
+    @VisibleForTesting
+    PartitionedSearchSpliterator(@Nonnull final ConnectionFactory connectionFactory,
+                                 @Nonnull final List<SearchRequest> partitions,
+                                 @Nonnull final BiFunction<Connection, SearchRequest, Iterator<LdapEntry>> factory) {
+        this(connectionFactory, new ArrayList<>(partitions), factory, ConcurrentHashMap.newKeySet());
+    }
+
+    private PartitionedSearchSpliterator(
+            @Nonnull final ConnectionFactory connectionFactory, @Nonnull final List<SearchRequest> partitions,
+            @Nonnull final BiFunction<Connection, SearchRequest, Iterator<LdapEntry>> factory,
+            @Nonnull final Set<Connection> openConnections) {
+        this.connectionFactory = connectionFactory;
+        this.partitions = partitions;
+        this.iteratorFactory = factory;
+        this.openConnections = openConnections;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super LdapEntry> action) {
+        while (true) {
+            if (current == null) {
+                if (partitions.isEmpty()) {
+                    return false;
+                }
+                startPartition(partitions.remove(0));
+            }
+
+            assert current != null;
+            if (current.hasNext()) {
+                action.accept(current.next());
+                return true;
+            }
+            finishPartition();
+        }
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<LdapEntry> trySplit() {
+        // we keep at least 1 partition if we haven't started one yet
+        final int size = partitions.size();
+        final int keep = current == null ? (size + 1) / 2 : size / 2;
+        if (size - keep <= 0) {
+            return null;
+        }
+
+        final List<SearchRequest> split = new ArrayList<>(partitions.subList(keep, size));
+        partitions = new ArrayList<>(partitions.subList(0, keep));
+        return new PartitionedSearchSpliterator(connectionFactory, split, iteratorFactory, openConnections);
+    }
+
+    @Override
+    public long estimateSize() {
+        return current == null && partitions.isEmpty() ? 0 : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL;
+    }
+
+    @Override
+    public void close() {
+        for (final Connection conn : openConnections) {
+            if (openConnections.remove(conn)) {
+                LdapUtils.closeConnection(conn);
+            }
+        }
+    }
+
+    private void startPartition(@Nonnull final SearchRequest request) {
+        Connection conn = null;
+        try {
+            conn = connectionFactory.getConnection();
+            conn.open();
+        } catch (final LdapException e) {
+            LdapUtils.closeConnection(conn);
+            throw new LdaptiveDaoException(e);
+        }
+
+        connection = conn;
+        openConnections.add(conn);
+        current = iteratorFactory.apply(conn, request);
+    }
+
+    private void finishPartition() {
+        if (connection != null && openConnections.remove(connection)) {
+            LdapUtils.closeConnection(connection);
+        }
+        connection = null;
+        current = null;
+    }
+}
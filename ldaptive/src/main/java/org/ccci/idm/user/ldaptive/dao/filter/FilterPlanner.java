@@ -0,0 +1,145 @@
+package org.ccci.idm.user.ldaptive.dao.filter;
+
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_CN;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_CRU_DESIGNATION;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_CRU_PROXY_ADDRESSES;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_EMPLOYEE_NUMBER;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_FACEBOOKID;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_FIRSTNAME;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_GROUPS;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_GUID;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_LASTNAME;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_OBJECTCLASS;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_RELAY_GUID;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_THEKEY_GUID;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_USERID;
+
+import com.google.common.collect.ImmutableMap;
+import org.ldaptive.SearchFilter;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reorders the components of AND filters so that the most selective, indexed, comparisons are evaluated first. The
+ * cost of an equality comparison is looked up in a per attribute cost table, presence and substring comparisons are
+ * penalized, and negations are always evaluated last.
+ */
+public class FilterPlanner {
+    private static final Map<String, Integer> DEFAULT_COSTS = ImmutableMap.<String, Integer>builder()
+            .put(LDAP_ATTR_THEKEY_GUID, 1)
+            .put(LDAP_ATTR_GUID, 1)
+            .put(LDAP_ATTR_RELAY_GUID, 1)
+            .put(LDAP_ATTR_CN, 2)
+            .put(LDAP_ATTR_USERID, 2)
+            .put(LDAP_ATTR_EMPLOYEE_NUMBER, 3)
+            .put(LDAP_ATTR_FACEBOOKID, 3)
+            .put(LDAP_ATTR_CRU_DESIGNATION, 3)
+            .put(LDAP_ATTR_CRU_PROXY_ADDRESSES, 5)
+            .put(LDAP_ATTR_FIRSTNAME, 20)
+            .put(LDAP_ATTR_LASTNAME, 20)
+            .put(LDAP_ATTR_GROUPS, 30)
+            .put(LDAP_ATTR_OBJECTCLASS, 90)
+            .build();
+
+    private static final int DEFAULT_COST = 50;
+    private static final int PRESENCE_PENALTY = 100;
+    private static final int SUBSTRING_PENALTY = 200;
+    private static final int NOT_COST = 1000;
+
+    // attribute names are case-insensitive
+    @Nonnull
+    private final Map<String, Integer> costs = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private int defaultCost = DEFAULT_COST;
+
+    public FilterPlanner() {
+        costs.putAll(DEFAULT_COSTS);
+    }
+
+    /**
+     * Override the equality cost of the specified attributes. Lower costs are evaluated first.
+     */
+    public void setAttributeCosts(@Nonnull final Map<String, Integer> costs) {
+        this.costs.putAll(costs);
+    }
+
+    public void setDefaultCost(final int cost) {
+        defaultCost = cost;
+    }
+
+    /**
+     * @param filter the filter to plan
+     * @return an equivalent filter with the components of any AND filters ordered by their estimated cost
+     */
+    @Nonnull
+    public BaseFilter plan(@Nonnull final BaseFilter filter) {
+        return (BaseFilter) planFilter(filter);
+    }
+
+    @Nonnull
+    private SearchFilter planFilter(@Nonnull final SearchFilter filter) {
+        if (filter instanceof AndFilter) {
+            final List<SearchFilter> components = new ArrayList<>();
+            flattenAnd((AndFilter) filter, components);
+            components.sort(Comparator.comparingInt(this::cost));
+            return new AndFilter(components.toArray(new SearchFilter[0]));
+        } else if (filter instanceof OrFilter) {
+            final SearchFilter[] components = new SearchFilter[((OrFilter) filter).filters.length];
+            for (int i = 0; i < components.length; i++) {
+                components[i] = planFilter(((OrFilter) filter).filters[i]);
+            }
+            return new OrFilter(components);
+        } else if (filter instanceof NotFilter && ((NotFilter) filter).filters.length == 1) {
+            return new NotFilter(planFilter(((NotFilter) filter).filters[0]));
+        }
+
+        return filter;
+    }
+
+    private void flattenAnd(@Nonnull final AndFilter filter, @Nonnull final List<SearchFilter> components) {
+        for (final SearchFilter component : filter.filters) {
+            if (component instanceof AndFilter) {
+                flattenAnd((AndFilter) component, components);
+            } else {
+                components.add(planFilter(component));
+            }
+        }
+    }
+
+    int cost(@Nonnull final SearchFilter filter) {
+        if (filter instanceof EqualsFilter || filter instanceof ParameterFilter) {
+            return attributeCost(((FieldFilter) filter).field);
+        } else if (filter instanceof PresentFilter) {
+            return attributeCost(((FieldFilter) filter).field) + PRESENCE_PENALTY;
+        } else if (filter instanceof LikeFilter) {
+            return attributeCost(((FieldFilter) filter).field) + SUBSTRING_PENALTY;
+        } else if (filter instanceof NotFilter) {
+            return NOT_COST;
+        } else if (filter instanceof AndFilter) {
+            // an AND is as selective as its most selective component
+            int cost = Integer.MAX_VALUE;
+            for (final SearchFilter component : ((AndFilter) filter).filters) {
+                cost = Math.min(cost, cost(component));
+            }
+            return cost != Integer.MAX_VALUE ? cost : defaultCost;
+        } else if (filter instanceof OrFilter) {
+            // an OR needs to evaluate every component
+            long cost = 0;
+            for (final SearchFilter component : ((OrFilter) filter).filters) {
+                cost += cost(component);
+            }
+            return (int) Math.min(cost, NOT_COST - 1);
+        }
+
+        return defaultCost;
+    }
+
+    private int attributeCost(@Nonnull final String attribute) {
+        final Integer cost = costs.get(attribute);
+        return cost != null ? cost : defaultCost;
+    }
+}
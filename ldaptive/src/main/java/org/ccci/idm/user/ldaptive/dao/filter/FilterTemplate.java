@@ -0,0 +1,124 @@
+package org.ccci.idm.user.ldaptive.dao.filter;
+
+import org.ldaptive.SearchFilter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A precompiled search filter containing {@link ParameterFilter} slots. The constant portions of the filter are
+ * rendered once when the template is compiled, applying the template only escapes and substitutes the parameter
+ * values into a single pre-sized buffer. Values are encoded exactly as {@link EqualsFilter} would encode them.
+ */
+@Immutable
+public final class FilterTemplate {
+    static final int MAX_PARAMETERS = 10;
+
+    // parameter slots are rendered as a NUL followed by the parameter index, a raw NUL is always escaped in values
+    private static final char SLOT_MARKER = '\0';
+
+    // literal filter segments, the parameter in slots[i] is between segments[i] and segments[i + 1]
+    @Nonnull
+    private final String[] segments;
+    @Nonnull
+    private final int[] slots;
+    private final int parameters;
+    private final int literalLength;
+
+    private FilterTemplate(@Nonnull final String[] segments, @Nonnull final int[] slots) {
+        this.segments = segments;
+        this.slots = slots;
+
+        int parameters = 0;
+        for (final int slot : slots) {
+            parameters = Math.max(parameters, slot + 1);
+        }
+        this.parameters = parameters;
+
+        int length = 0;
+        for (final String segment : segments) {
+            length += segment.length();
+        }
+        literalLength = length;
+    }
+
+    static String slot(final int index) {
+        return new String(new char[]{SLOT_MARKER, (char) ('0' + index)});
+    }
+
+    /**
+     * Compile the specified filter into a template.
+     *
+     * @param filter the filter containing {@link ParameterFilter} slots
+     * @return the compiled template
+     */
+    @Nonnull
+    public static FilterTemplate compile(@Nonnull final SearchFilter filter) {
+        final String formatted = filter.format();
+        final List<String> segments = new ArrayList<>();
+        final List<Integer> slots = new ArrayList<>();
+
+        int start = 0;
+        int marker;
+        while ((marker = formatted.indexOf(SLOT_MARKER, start)) >= 0) {
+            segments.add(formatted.substring(start, marker));
+            slots.add(formatted.charAt(marker + 1) - '0');
+            start = marker + 2;
+        }
+        segments.add(formatted.substring(start));
+
+        final int[] slotIndexes = new int[slots.size()];
+        for (int i = 0; i < slotIndexes.length; i++) {
+            slotIndexes[i] = slots.get(i);
+        }
+        return new FilterTemplate(segments.toArray(new String[0]), slotIndexes);
+    }
+
+    /**
+     * Render this template with the specified parameter values. null values are rendered as an empty value.
+     *
+     * @param values the parameter values
+     * @return the rendered filter
+     */
+    @Nonnull
+    public BaseFilter apply(@Nonnull final String... values) {
+        if (values.length < parameters) {
+            throw new IllegalArgumentException("expected " + parameters + " parameters, got " + values.length);
+        }
+
+        // calculate the size of the rendered filter, assuming some values may need escaping
+        int length = literalLength;
+        for (final int slot : slots) {
+            final String value = values[slot];
+            length += value != null ? value.length() + 8 : 0;
+        }
+
+        final StringBuilder sb = new StringBuilder(length);
+        sb.append(segments[0]);
+        for (int i = 0; i < slots.length; i++) {
+            escape(sb, values[slots[i]]);
+            sb.append(segments[i + 1]);
+        }
+        return new FormattedFilter(sb.toString());
+    }
+
+    private static void escape(@Nonnull final StringBuilder sb, @Nullable final String value) {
+        if (value == null) {
+            return;
+        }
+
+        // only delegate to the full filter value encoding when the value actually contains characters needing escaping
+        final int len = value.length();
+        for (int i = 0; i < len; i++) {
+            final char ch = value.charAt(i);
+            if (ch == '*' || ch == '(' || ch == ')' || ch == '\\' || ch == 0 || ch > 0x7f) {
+                sb.append(FormattedFilter.encode(value));
+                return;
+            }
+        }
+        sb.append(value);
+    }
+}
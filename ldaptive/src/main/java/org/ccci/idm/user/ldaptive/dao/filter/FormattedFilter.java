@@ -0,0 +1,37 @@
+package org.ccci.idm.user.ldaptive.dao.filter;
+
+import com.google.common.base.Objects;
+
+/**
+ * A filter that has already been rendered to its string representation.
+ */
+public final class FormattedFilter extends BaseFilter {
+    private final String filter;
+
+    FormattedFilter(final String filter) {
+        this.filter = filter;
+    }
+
+    static String encode(final String value) {
+        return encodeValue(value);
+    }
+
+    @Override
+    public String format() {
+        return filter;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof FormattedFilter)) { return false; }
+
+        final FormattedFilter that = (FormattedFilter) o;
+        return super.equals(o) && Objects.equal(this.filter, that.filter);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(super.hashCode(), this.filter);
+    }
+}
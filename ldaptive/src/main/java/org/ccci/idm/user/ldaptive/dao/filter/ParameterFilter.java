@@ -0,0 +1,42 @@
+package org.ccci.idm.user.ldaptive.dao.filter;
+
+import com.google.common.base.Objects;
+
+/**
+ * An equality filter whose value is a parameter slot of a {@link FilterTemplate}. The value is provided when the
+ * template is applied.
+ */
+public class ParameterFilter extends FieldFilter {
+    private final int index;
+
+    public ParameterFilter(final String field) {
+        this(field, 0);
+    }
+
+    public ParameterFilter(final String field, final int index) {
+        super(field);
+        if (index < 0 || index >= FilterTemplate.MAX_PARAMETERS) {
+            throw new IllegalArgumentException("invalid parameter index: " + index);
+        }
+        this.index = index;
+    }
+
+    @Override
+    public String format() {
+        return "(" + encodeValue(this.field) + "=" + FilterTemplate.slot(index) + ")";
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof ParameterFilter)) { return false; }
+
+        final ParameterFilter that = (ParameterFilter) o;
+        return super.equals(o) && this.index == that.index;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(super.hashCode(), this.index);
+    }
+}
@@ -85,11 +85,14 @@
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public abstract class AbstractUserLdapEntryMapper<O extends User> implements LdapEntryMapper<O> {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractUserLdapEntryMapper.class);
@@ -121,6 +124,16 @@ public void setBaseGroupDnString(@Nullable final String dn) {
         setBaseGroupDn(dn != null ? DnUtils.toDn(dn) : null);
     }
 
+    private boolean lazyGroups = false;
+
+    /**
+     * When enabled, group membership DNs are only parsed & filtered the first time {@link User#getGroups()} is
+     * accessed instead of when the LdapEntry is mapped.
+     */
+    public void setLazyGroups(final boolean lazyGroups) {
+        this.lazyGroups = lazyGroups;
+    }
+
     @Override
     public String mapDn(final O user) {
         try {
@@ -230,6 +243,44 @@ public void map(@Nonnull final O user, final LdapEntry entry) {
 
     @Override
     public void map(final LdapEntry entry, final O user) {
+        mapIdentity(entry, user);
+        for (final User.Attr attr : User.Attr.values()) {
+            mapAttr(entry, user, attr);
+        }
+
+        // attributes not covered by a User.Attr projection
+        user.setMfaBypassed(getBooleanValue(entry, LDAP_ATTR_MFA_BYPASS, user.isMfaBypassed()));
+        if (lazyGroups) {
+            final Dn baseGroupDn = this.baseGroupDn;
+            final List<String> rawGroups =
+                    baseGroupDn != null ? new ArrayList<>(getStringValues(entry, LDAP_ATTR_GROUPS)) : null;
+            user.setLazyGroups(() -> parseGroupValues(rawGroups, baseGroupDn));
+        } else {
+            user.setGroups(this.getGroupValues(entry, LDAP_ATTR_GROUPS));
+        }
+
+        // return the loaded User object
+        LOG.debug("User loaded from LdapEntry: {}", user.getTheKeyGuid());
+    }
+
+    /**
+     * Map only the identity attributes (email, deactivated flag & guids) and the projected attributes from the
+     * LdapEntry. The LdapEntry is expected to have been loaded with the return attributes for the projection.
+     *
+     * @param entry      the LdapEntry to map
+     * @param user       the User to populate
+     * @param projection the attributes to populate
+     */
+    public void map(@Nonnull final LdapEntry entry, @Nonnull final O user, @Nonnull final Set<User.Attr> projection) {
+        mapIdentity(entry, user);
+        for (final User.Attr attr : projection) {
+            mapAttr(entry, user, attr);
+        }
+
+        LOG.debug("Projected User loaded from LdapEntry: {} {}", user.getTheKeyGuid(), projection);
+    }
+
+    private void mapIdentity(@Nonnull final LdapEntry entry, @Nonnull final O user) {
         // set email & deactivated flag accordingly
         final String cn = this.getStringValue(entry, LDAP_ATTR_CN);
         if (Strings.isNullOrEmpty(cn) || cn.startsWith(LDAP_DEACTIVATED_PREFIX)) {
@@ -250,78 +301,105 @@ public void map(final LdapEntry entry, final O user) {
         user.setGuid(this.getStringValue(entry, LDAP_ATTR_GUID));
         user.setRelayGuid(this.getStringValue(entry, LDAP_ATTR_RELAY_GUID));
         user.setTheKeyGuid(this.getStringValue(entry, LDAP_ATTR_THEKEY_GUID));
-        user.setFirstName(this.getStringValue(entry, LDAP_ATTR_FIRSTNAME));
-        user.setPreferredName(getStringValue(entry, LDAP_ATTR_PREFERRED_NAME));
-        user.setLastName(this.getStringValue(entry, LDAP_ATTR_LASTNAME));
-
-        // Meta-data
-        user.setLoginTime(this.getTimeValue(entry, LDAP_ATTR_LOGINTIME));
-        user.setPasswordChangedTime(this.getTimeValue(entry, LDAP_ATTR_PASSWORDCHANGEDTIME));
+    }
 
-        // MFA attributes
-        user.setMfaBypassed(getBooleanValue(entry, LDAP_ATTR_MFA_BYPASS, user.isMfaBypassed()));
-        user.setMfaEncryptedSecret(getStringValue(entry, LDAP_ATTR_MFA_SECRET));
-        user.setMfaIntruderLocked(getBooleanValue(entry, LDAP_ATTR_MFA_INTRUDER_LOCKED, false));
-        user.setMfaIntruderAttempts(getIntegerValue(entry, LDAP_ATTR_MFA_INTRUDER_ATTEMPTS, null));
-        user.setMfaIntruderResetTime(getTimeValue(entry, LDAP_ATTR_MFA_INTRUDER_RESET_TIME, null));
-
-        // federated identities
-        final Map<String, Double> facebookIdStrengths = this.getStrengthValues(entry, LDAP_ATTR_FACEBOOKIDSTRENGTH);
-        for (final String facebookId : this.getStringValues(entry, LDAP_ATTR_FACEBOOKID)) {
-            user.setFacebookId(facebookId, facebookIdStrengths.get(facebookId));
+    private void mapAttr(@Nonnull final LdapEntry entry, @Nonnull final O user, @Nonnull final User.Attr attr) {
+        switch (attr) {
+            case EMAIL:
+                user.setEmailVerified(this.getBooleanValue(entry, LDAP_FLAG_EMAILVERIFIED, false));
+                break;
+            case NAME:
+                user.setFirstName(this.getStringValue(entry, LDAP_ATTR_FIRSTNAME));
+                user.setPreferredName(getStringValue(entry, LDAP_ATTR_PREFERRED_NAME));
+                user.setLastName(this.getStringValue(entry, LDAP_ATTR_LASTNAME));
+                break;
+            case PASSWORD:
+                user.setPasswordChangedTime(this.getTimeValue(entry, LDAP_ATTR_PASSWORDCHANGEDTIME));
+                user.setForcePasswordChange(this.getBooleanValue(entry, LDAP_FLAG_FORCEPASSWORDCHANGE, false));
+                break;
+            case LOGINTIME:
+                user.setLoginTime(this.getTimeValue(entry, LDAP_ATTR_LOGINTIME));
+                break;
+            case FLAGS:
+                user.setAllowPasswordChange(this.getBooleanValue(entry, LDAP_FLAG_ALLOWPASSWORDCHANGE, true));
+                user.setLoginDisabled(this.getBooleanValue(entry, LDAP_FLAG_LOGINDISABLED, false));
+                user.setLocked(this.getBooleanValue(entry, LDAP_FLAG_LOCKED, false));
+                user.setForcePasswordChange(this.getBooleanValue(entry, LDAP_FLAG_FORCEPASSWORDCHANGE, false));
+                user.setEmailVerified(this.getBooleanValue(entry, LDAP_FLAG_EMAILVERIFIED, false));
+                break;
+            case SELFSERVICEKEYS:
+                user.setSignupKey(this.getStringValue(entry, LDAP_ATTR_SIGNUPKEY));
+                user.setChangeEmailKey(this.getStringValue(entry, LDAP_ATTR_CHANGEEMAILKEY));
+                user.setProposedEmail(this.getStringValue(entry, LDAP_ATTR_PROPOSEDEMAIL));
+                user.setResetPasswordKey(this.getStringValue(entry, LDAP_ATTR_RESETPASSWORDKEY));
+                break;
+            case DOMAINSVISITED:
+                user.setDomainsVisited(this.getStringValues(entry, LDAP_ATTR_DOMAINSVISITED));
+                break;
+            case FACEBOOK:
+                final Map<String, Double> facebookIdStrengths =
+                        this.getStrengthValues(entry, LDAP_ATTR_FACEBOOKIDSTRENGTH);
+                for (final String facebookId : this.getStringValues(entry, LDAP_ATTR_FACEBOOKID)) {
+                    user.setFacebookId(facebookId, facebookIdStrengths.get(facebookId));
+                }
+                break;
+            case GLOBALREGISTRY:
+                user.setGrMasterPersonId(getStringValue(entry, LDAP_ATTR_GRMASTERPERSONID));
+                user.setGrStageMasterPersonId(getStringValue(entry, LDAP_ATTR_GRSTAGEMASTERPERSONID));
+                user.setGrPersonId(getStringValue(entry, LDAP_ATTR_GRPERSONID));
+                user.setGrStagePersonId(getStringValue(entry, LDAP_ATTR_GRSTAGEPERSONID));
+                user.setGrSyncChecksum(getStringValue(entry, LDAP_ATTR_GR_SYNC_CHECKSUM));
+                user.setGrStageSyncChecksum(getStringValue(entry, LDAP_ATTR_GR_SYNC_CHECKSUM_STAGE));
+                break;
+            case LOCATION:
+                user.setCity(this.getStringValue(entry, LDAP_ATTR_CITY));
+                user.setState(this.getStringValue(entry, LDAP_ATTR_STATE));
+                user.setPostal(this.getStringValue(entry, LDAP_ATTR_POSTAL_CODE));
+                user.setCountry(this.getStringValue(entry, LDAP_ATTR_COUNTRY));
+                break;
+            case EMPLOYEE_NUMBER:
+                user.setEmployeeId(this.getStringValue(entry, LDAP_ATTR_EMPLOYEE_NUMBER));
+                break;
+            case CRU_DESIGNATION:
+                user.setCruDesignation(this.getStringValue(entry, LDAP_ATTR_CRU_DESIGNATION));
+                break;
+            case CONTACT:
+                user.setTelephoneNumber(this.getStringValue(entry, LDAP_ATTR_TELEPHONE));
+                break;
+            case CRU_PREFERRED_NAME:
+                user.setPreferredName(getStringValue(entry, LDAP_ATTR_PREFERRED_NAME));
+                break;
+            case CRU_PROXY_ADDRESSES:
+                user.setCruProxyAddresses(this.getStringValues(entry, LDAP_ATTR_CRU_PROXY_ADDRESSES));
+                break;
+            case HUMAN_RESOURCE:
+                user.setCruEmployeeStatus(this.getStringValue(entry, LDAP_ATTR_CRU_EMPLOYEE_STATUS));
+                user.setCruGender(this.getStringValue(entry, LDAP_ATTR_CRU_GENDER));
+                user.setCruHrStatusCode(this.getStringValue(entry, LDAP_ATTR_CRU_HR_STATUS_CODE));
+                user.setCruJobCode(this.getStringValue(entry, LDAP_ATTR_CRU_JOB_CODE));
+                user.setCruManagerID(this.getStringValue(entry, LDAP_ATTR_CRU_MANAGER_ID));
+                user.setCruMinistryCode(this.getStringValue(entry, LDAP_ATTR_CRU_MINISTRY_CODE));
+                user.setCruPayGroup(this.getStringValue(entry, LDAP_ATTR_CRU_PAY_GROUP));
+                user.setCruSubMinistryCode(this.getStringValue(entry, LDAP_ATTR_CRU_SUB_MINISTRY_CODE));
+                user.setDepartmentNumber(this.getStringValue(entry, LDAP_ATTR_DEPARTMENT_NUMBER));
+                break;
+            case SECURITYQA:
+                user.setSecurityQuestion(this.getStringValue(entry, LDAP_ATTR_SECURITY_QUESTION));
+                user.setSecurityAnswer(this.getStringValue(entry, LDAP_ATTR_SECURITY_ANSWER), false);
+                break;
+            case MFA_SECRET:
+                user.setMfaEncryptedSecret(getStringValue(entry, LDAP_ATTR_MFA_SECRET));
+                break;
+            case MFA_INTRUDER_DETECTION:
+                user.setMfaIntruderLocked(getBooleanValue(entry, LDAP_ATTR_MFA_INTRUDER_LOCKED, false));
+                user.setMfaIntruderAttempts(getIntegerValue(entry, LDAP_ATTR_MFA_INTRUDER_ATTEMPTS, null));
+                user.setMfaIntruderResetTime(getTimeValue(entry, LDAP_ATTR_MFA_INTRUDER_RESET_TIME, null));
+                break;
+            case ORCA:
+            default:
+                // not stored in LDAP
+                break;
         }
-
-        // Global Registry attributes
-        user.setGrMasterPersonId(getStringValue(entry, LDAP_ATTR_GRMASTERPERSONID));
-        user.setGrStageMasterPersonId(getStringValue(entry, LDAP_ATTR_GRSTAGEMASTERPERSONID));
-        user.setGrPersonId(getStringValue(entry, LDAP_ATTR_GRPERSONID));
-        user.setGrStagePersonId(getStringValue(entry, LDAP_ATTR_GRSTAGEPERSONID));
-        user.setGrSyncChecksum(getStringValue(entry, LDAP_ATTR_GR_SYNC_CHECKSUM));
-        user.setGrStageSyncChecksum(getStringValue(entry, LDAP_ATTR_GR_SYNC_CHECKSUM_STAGE));
-
-        // Multi-value attributes
-        user.setGroups(this.getGroupValues(entry, LDAP_ATTR_GROUPS));
-        user.setDomainsVisited(this.getStringValues(entry, LDAP_ATTR_DOMAINSVISITED));
-
-        // Flags
-        user.setAllowPasswordChange(this.getBooleanValue(entry, LDAP_FLAG_ALLOWPASSWORDCHANGE, true));
-        user.setLoginDisabled(this.getBooleanValue(entry, LDAP_FLAG_LOGINDISABLED, false));
-        user.setLocked(this.getBooleanValue(entry, LDAP_FLAG_LOCKED, false));
-        user.setForcePasswordChange(this.getBooleanValue(entry, LDAP_FLAG_FORCEPASSWORDCHANGE, false));
-        user.setEmailVerified(this.getBooleanValue(entry, LDAP_FLAG_EMAILVERIFIED, false));
-
-        // various self-service keys
-        user.setSignupKey(this.getStringValue(entry, LDAP_ATTR_SIGNUPKEY));
-        user.setChangeEmailKey(this.getStringValue(entry, LDAP_ATTR_CHANGEEMAILKEY));
-        user.setProposedEmail(this.getStringValue(entry, LDAP_ATTR_PROPOSEDEMAIL));
-        user.setResetPasswordKey(this.getStringValue(entry, LDAP_ATTR_RESETPASSWORDKEY));
-
-        // cru person attributes
-        user.setCruDesignation(this.getStringValue(entry, LDAP_ATTR_CRU_DESIGNATION));
-        user.setCruEmployeeStatus(this.getStringValue(entry, LDAP_ATTR_CRU_EMPLOYEE_STATUS));
-        user.setCruGender(this.getStringValue(entry, LDAP_ATTR_CRU_GENDER));
-        user.setCruHrStatusCode(this.getStringValue(entry, LDAP_ATTR_CRU_HR_STATUS_CODE));
-        user.setCruJobCode(this.getStringValue(entry, LDAP_ATTR_CRU_JOB_CODE));
-        user.setCruManagerID(this.getStringValue(entry, LDAP_ATTR_CRU_MANAGER_ID));
-        user.setCruMinistryCode(this.getStringValue(entry, LDAP_ATTR_CRU_MINISTRY_CODE));
-        user.setCruPayGroup(this.getStringValue(entry, LDAP_ATTR_CRU_PAY_GROUP));
-        user.setCruSubMinistryCode(this.getStringValue(entry, LDAP_ATTR_CRU_SUB_MINISTRY_CODE));
-        user.setCruProxyAddresses(this.getStringValues(entry, LDAP_ATTR_CRU_PROXY_ADDRESSES));
-
-        user.setEmployeeId(this.getStringValue(entry, LDAP_ATTR_EMPLOYEE_NUMBER));
-        user.setDepartmentNumber(this.getStringValue(entry, LDAP_ATTR_DEPARTMENT_NUMBER));
-        user.setTelephoneNumber(this.getStringValue(entry, LDAP_ATTR_TELEPHONE));
-
-        user.setCity(this.getStringValue(entry, LDAP_ATTR_CITY));
-        user.setState(this.getStringValue(entry, LDAP_ATTR_STATE));
-        user.setPostal(this.getStringValue(entry, LDAP_ATTR_POSTAL_CODE));
-        user.setCountry(this.getStringValue(entry, LDAP_ATTR_COUNTRY));
-
-        user.setSecurityQuestion(this.getStringValue(entry, LDAP_ATTR_SECURITY_QUESTION));
-        user.setSecurityAnswer(this.getStringValue(entry, LDAP_ATTR_SECURITY_ANSWER), false);
-
-        // return the loaded User object
-        LOG.debug("User loaded from LdapEntry: {}", user.getTheKeyGuid());
     }
 
     protected final LdapAttribute attr(@Nonnull final String name) {
@@ -439,12 +517,22 @@ protected final Collection<Group> getGroupValues(@Nonnull final LdapEntry entry,
             return ImmutableSet.of();
         }
 
+        return parseGroupValues(getStringValues(entry, attribute), baseGroupDn);
+    }
+
+    @Nonnull
+    private static Collection<Group> parseGroupValues(@Nullable final Collection<String> rawDns,
+                                                      @Nullable final Dn baseGroupDn) {
+        if (rawDns == null || baseGroupDn == null) {
+            return ImmutableSet.of();
+        }
+
         final ImmutableSet.Builder<Group> groups = ImmutableSet.builder();
-        for (final String rawDn : getStringValues(entry, attribute)) {
+        for (final String rawDn : rawDns) {
             final Dn dn = DnUtils.toDnSafe(rawDn);
             if (dn != null && dn.isDescendantOfOrEqualTo(baseGroupDn)) {
                 if (dn.getComponents().size() > 0) {
-                    groups.add(dn.asGroup());
+                    groups.add(DnUtils.toGroup(dn));
                 }
             }
         }
@@ -1,7 +1,12 @@
 package org.ccci.idm.user.ldaptive.dao.util;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.ccci.idm.user.ldaptive.Dn;
 import org.ccci.idm.user.ldaptive.LdapGroup;
 import org.ldaptive.DnParser;
@@ -14,6 +19,25 @@ public class DnUtils {
     private static final String DELIMITER = ",";
     private static final String VALUE_DELIMITER = "=";
 
+    private static final int CACHE_SIZE = 10_000;
+
+    // raw DN strings are cached case-sensitively, so the same raw DN always resolves to the same shared Dn instance
+    private static final LoadingCache<String, Dn> DN_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .build(CacheLoader.from(DnUtils::parseDn));
+    // weakKeys() compares keys by identity, Dn equality ignores case so an equality based cache could return a
+    // string with different casing than the Dn being formatted
+    private static final LoadingCache<Dn, String> STRING_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .weakKeys()
+            .build(CacheLoader.from(DnUtils::formatDn));
+    // an LdapGroup references its Dn, so groups are held weakly as well to let unused entries be collected
+    private static final LoadingCache<Dn, LdapGroup> GROUP_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .weakKeys()
+            .weakValues()
+            .build(CacheLoader.from(LdapGroup::new));
+
     /**
      * Parse a DN string into a {@link Dn object}.
      *
@@ -26,7 +50,11 @@ public static Dn toDn(@Nullable final String rawDn) {
         if (rawDn == null) {
             return Dn.ROOT;
         }
+        return getCached(DN_CACHE, rawDn);
+    }
 
+    @Nonnull
+    private static Dn parseDn(@Nonnull final String rawDn) {
         final ImmutableList.Builder<Dn.Component> builder = ImmutableList.builder();
         for (final LdapAttribute attribute : Lists.reverse(DnParser.convertDnToAttributes(rawDn))) {
             builder.add(new Dn.Component(attribute.getName(), attribute.getStringValue()));
@@ -52,6 +80,11 @@ public static Dn toDnSafe(@Nullable final String rawDn) {
 
     @Nonnull
     public static String toString(@Nonnull final Dn dn) {
+        return getCached(STRING_CACHE, dn);
+    }
+
+    @Nonnull
+    private static String formatDn(@Nonnull final Dn dn) {
         final StringBuilder sb = new StringBuilder();
 
         // append components
@@ -70,4 +103,29 @@ public static String toString(@Nonnull final Dn dn) {
     public static String toString(@Nonnull final LdapGroup group) {
         return toString(group.getDn());
     }
+
+    /**
+     * Return the interned {@link LdapGroup} for the specified {@link Dn}. The same Dn instance will return the same
+     * shared LdapGroup instance while that group is still in use. Unlike {@link Dn#asGroup()} this is used by the DAO
+     * when mapping groups so users held in memory share group instances.
+     *
+     * @param dn the Dn of the group
+     * @return the LdapGroup for the specified Dn
+     * @throws IllegalArgumentException when the Dn isn't valid for a group
+     */
+    @Nonnull
+    public static LdapGroup toGroup(@Nonnull final Dn dn) {
+        return getCached(GROUP_CACHE, dn);
+    }
+
+    @Nonnull
+    private static <K, V> V getCached(@Nonnull final LoadingCache<K, V> cache, @Nonnull final K key) {
+        try {
+            return cache.getUnchecked(key);
+        } catch (final UncheckedExecutionException e) {
+            // propagate the original exception thrown by the loader
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
 }
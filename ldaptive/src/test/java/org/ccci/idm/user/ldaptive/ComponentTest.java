@@ -1,12 +1,14 @@
 package org.ccci.idm.user.ldaptive;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.Matchers.comparesEqualTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
 
 import org.junit.Test;
+import org.springframework.util.SerializationUtils;
 
 public class ComponentTest {
     @Test
@@ -30,4 +32,24 @@ public void verifyCompareToValue() throws Exception {
         assertThat(component1, is(lessThan(component2)));
         assertThat(component2, is(greaterThan(component1)));
     }
+
+    @Test
+    public void verifyEqualsIgnoresCase() throws Exception {
+        final Dn.Component component1 = new Dn.Component("cn", "Zebra");
+        final Dn.Component component2 = new Dn.Component("CN", "zEBRA");
+
+        assertThat(component1, is(component2));
+        assertThat(component1.hashCode(), is(component2.hashCode()));
+        assertThat(component1, is(not(new Dn.Component("ou", "Zebra"))));
+    }
+
+    @Test
+    public void verifySerialization() throws Exception {
+        final Dn.Component component = new Dn.Component("cn", "Zebra");
+        final Dn.Component deserialized =
+                (Dn.Component) SerializationUtils.deserialize(SerializationUtils.serialize(component));
+
+        assertThat(deserialized, is(component));
+        assertThat(deserialized.hashCode(), is(component.hashCode()));
+    }
 }
@@ -13,6 +13,7 @@
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
 import org.ccci.idm.user.User;
+import org.ccci.idm.user.query.ConstantExpression;
 import org.ccci.idm.user.query.Expression;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -64,6 +65,8 @@ private Object compoundExpressions() {
                 new Object[] {FIRST_NAME.eq("F").and(LAST_NAME.eq("L")), "(&(givenName=F)(sn=L))"},
                 new Object[] {FIRST_NAME.eq("F").or(LAST_NAME.eq("L")), "(|(givenName=F)(sn=L))"},
                 new Object[] {FIRST_NAME.eq("F").not(), "(!(givenName=F))"},
+                new Object[] {ConstantExpression.TRUE, "(objectClass=*)"},
+                new Object[] {ConstantExpression.FALSE, "(!(objectClass=*))"},
         };
     }
 
@@ -1,24 +1,73 @@
 package org.ccci.idm.user.ldaptive.dao;
 
 import static org.ccci.idm.user.dao.AbstractUserDao.SEARCH_NO_LIMIT;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_CN;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_FIRSTNAME;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_GUID;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_LASTNAME;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_MEMBER;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_PASSWORDCHANGEDTIME;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_SECURITY_ANSWER;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_THEKEY_GUID;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_DEACTIVATED_PREFIX;
+import static org.ccci.idm.user.TestUtil.newUser;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.common.util.concurrent.MoreExecutors;
+import org.ccci.idm.user.UniqueIdentifier;
+import org.ccci.idm.user.User;
 import org.ccci.idm.user.dao.AbstractUserDaoTest;
+import org.ccci.idm.user.dao.exception.DaoException;
 import org.ccci.idm.user.ldaptive.dao.exception.LdaptiveDaoException;
+import org.ccci.idm.user.ldaptive.dao.filter.BaseFilter;
+import org.ccci.idm.user.ldaptive.dao.filter.EqualsFilter;
+import org.ccci.idm.user.ldaptive.dao.util.DnUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.ldaptive.Connection;
 import org.ldaptive.ConnectionFactory;
+import org.ldaptive.LdapAttribute;
 import org.ldaptive.LdapEntry;
 import org.ldaptive.LdapException;
+import org.ldaptive.ModifyRequest;
+import org.ldaptive.Response;
+import org.ldaptive.ResultCode;
 import org.ldaptive.SearchRequest;
+import org.ldaptive.beans.LdapEntryMapper;
+import org.ldaptive.provider.ProviderConnection;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Stream;
 
 public class LdaptiveUserDaoTest extends AbstractUserDaoTest {
@@ -80,4 +129,335 @@ public void testStreamSearchRequestCantOpenConnection() throws Exception {
         verify(connection).open();
         verify(connection, never()).close();
     }
+
+    @Test
+    public void testBuildScanPartitions() {
+        dao.setBaseSearchDn("ou=users");
+        final BaseFilter filter = new EqualsFilter("objectClass", "person");
+
+        final List<SearchRequest> prefixPartitions = dao.buildScanPartitions(filter, "*");
+        assertThat(prefixPartitions, hasSize(36 + 1));
+        assertThat(prefixPartitions.get(0).getBaseDn(), is("ou=users"));
+        assertThat(prefixPartitions.get(0).getSearchFilter().format(), is("(&(objectClass=person)(cn=0*))"));
+        // users matching an earlier prefix are excluded, so a user with multiple cn values is only in 1 partition
+        assertThat(prefixPartitions.get(2).getSearchFilter().format(),
+                is("(&(objectClass=person)(cn=2*)(!(|(cn=0*)(cn=1*))))"));
+        assertThat(prefixPartitions.get(36).getSearchFilter().format(),
+                startsWith("(&(objectClass=person)(!(|(cn=0*)"));
+
+        dao.setParallelScanDns(Arrays.asList("ou=a,ou=users", "ou=b,ou=users"));
+        final List<SearchRequest> dnPartitions = dao.buildScanPartitions(filter, "*");
+        assertThat(dnPartitions, hasSize(2));
+        assertThat(dnPartitions.get(1).getBaseDn(), is("ou=b,ou=users"));
+        assertThat(dnPartitions.get(1).getSearchFilter(), is(filter));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuildScanPartitionsRejectsDnOutsideBaseSearchDn() {
+        dao.setBaseSearchDn("ou=users");
+        dao.setParallelScanDns(Arrays.asList("ou=a,ou=users", "ou=groups"));
+        dao.buildScanPartitions(new EqualsFilter("objectClass", "person"), "*");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuildScanPartitionsRejectsOverlappingDns() {
+        dao.setBaseSearchDn("ou=users");
+        dao.setParallelScanDns(Arrays.asList("ou=a,ou=users", "ou=b,ou=a,ou=users"));
+        dao.buildScanPartitions(new EqualsFilter("objectClass", "person"), "*");
+    }
+
+    @Test
+    public void testUpdateAllReportsFailuresLikeUpdate() throws Exception {
+        final List<User> users = setupUsers();
+        final User failing = users.get(1);
+        final ProviderConnection provider = mock(ProviderConnection.class);
+        when(connection.getProviderConnection()).thenReturn(provider);
+        when(provider.modify(any())).thenReturn(new Response<>(null, ResultCode.SUCCESS));
+        when(provider.modify(argThat((ModifyRequest r) -> r.getDn().equals(dn(failing)))))
+                .thenThrow(new LdapException("no such object", ResultCode.NO_SUCH_OBJECT));
+
+        final Map<Integer, DaoException> failures = dao.updateAll(users, User.Attr.NAME);
+        assertThat(failures.keySet(), contains(1));
+
+        // update() throws the same type of exception for the same LDAP error
+        try {
+            dao.update(failing, User.Attr.NAME);
+            fail("update should have failed");
+        } catch (final DaoException e) {
+            assertThat(failures.get(1), instanceOf(e.getClass()));
+        }
+    }
+
+    @Test
+    public void testUpdateAllReportsInvalidUsers() throws Exception {
+        final List<User> users = setupUsers();
+        final User invalid = users.get(1);
+        invalid.setEmail(null);
+        final ProviderConnection provider = mock(ProviderConnection.class);
+        when(connection.getProviderConnection()).thenReturn(provider);
+        when(provider.modify(any())).thenReturn(new Response<>(null, ResultCode.SUCCESS));
+
+        // the invalid user is reported as failed, the remaining users are still updated
+        final Map<Integer, DaoException> failures = dao.updateAll(users, User.Attr.NAME);
+        assertThat(failures.keySet(), contains(1));
+        assertThat(failures.get(1).getCause(), instanceOf(IllegalArgumentException.class));
+        verify(provider, times(users.size() - 1)).modify(any());
+    }
+
+    @Test
+    public void testUpdateAllKeepsFailuresOfOtherSlices() throws Exception {
+        final List<User> users = setupUsers();
+        final Connection failing = mock(Connection.class);
+        when(failing.open()).thenThrow(new LdapException("unavailable", ResultCode.UNAVAILABLE));
+        final ProviderConnection provider = mock(ProviderConnection.class);
+        when(connection.getProviderConnection()).thenReturn(provider);
+        when(provider.modify(any())).thenThrow(new LdapException("no such object", ResultCode.NO_SUCH_OBJECT));
+        when(connectionFactory.getConnection()).thenReturn(connection, failing);
+
+        // the first slice fails each user, the second slice can't open its connection
+        final Map<Integer, DaoException> failures = dao.updateAll(users, User.Attr.NAME);
+        assertThat(failures.keySet(), contains(0, 1, 2, 3));
+        assertThat(failures.get(0).getCause(), instanceOf(LdapException.class));
+        assertThat(((LdapException) failures.get(3).getCause()).getResultCode(), is(ResultCode.UNAVAILABLE));
+    }
+
+    @Test
+    public void testUpdateAllReportsUsersSharingATheKeyGuidSeparately() throws Exception {
+        final List<User> users = setupUsers();
+        users.forEach(user -> user.setTheKeyGuid("duplicate"));
+        final ProviderConnection provider = mock(ProviderConnection.class);
+        when(connection.getProviderConnection()).thenReturn(provider);
+        when(provider.modify(any())).thenThrow(new LdapException("no such object", ResultCode.NO_SUCH_OBJECT));
+
+        // failures are keyed by index, so every failed user is still reported
+        assertThat(dao.updateAll(users, User.Attr.NAME).keySet(), contains(0, 1, 2, 3));
+    }
+
+    @Test
+    public void testUpdateAllDoesNotShutDownProvidedExecutor() throws Exception {
+        final List<User> users = setupUsers();
+        final ExecutorService executor = MoreExecutors.newDirectExecutorService();
+        dao.setUpdateAllExecutor(executor);
+        final ProviderConnection provider = mock(ProviderConnection.class);
+        when(connection.getProviderConnection()).thenReturn(provider);
+        when(provider.modify(any())).thenReturn(new Response<>(null, ResultCode.SUCCESS));
+
+        assertThat(dao.updateAll(users, User.Attr.NAME).keySet(), empty());
+        assertThat(executor.isShutdown(), is(false));
+    }
+
+    @Test
+    public void testGroupMembershipModifiesAreChunked() throws Exception {
+        final List<User> users = setupUsers();
+        final String existing = dn(users.get(2));
+        dao.setBaseGroupDnString("ou=groups");
+        dao.setMaxGroupMembershipModifySize(2);
+
+        // record the member values of every modify of the group entry
+        final List<List<String>> members = new ArrayList<>();
+        final ProviderConnection provider = mock(ProviderConnection.class);
+        when(connection.getProviderConnection()).thenReturn(provider);
+        when(provider.modify(any())).thenAnswer(i -> {
+            final ModifyRequest request = i.getArgument(0);
+            final LdapAttribute attribute = request.getAttributeModifications()[0].getAttribute();
+            if (attribute.getName().equals(LDAP_ATTR_MEMBER)) {
+                members.add(new ArrayList<>(attribute.getStringValues()));
+                if (attribute.size() > 1 && attribute.getStringValues().contains(existing)) {
+                    throw new LdapException("value exists", ResultCode.ATTRIBUTE_OR_VALUE_EXISTS);
+                }
+            }
+            return new Response<>(null, ResultCode.SUCCESS);
+        });
+
+        dao.addToGroup(users, DnUtils.toDn("cn=group,ou=groups").asGroup(), false);
+
+        // only the chunk containing the existing member is retried one value at a time
+        assertThat(members, contains(
+                Arrays.asList(dn(users.get(0)), dn(users.get(1))),
+                Arrays.asList(dn(users.get(2)), dn(users.get(3))),
+                Collections.singletonList(dn(users.get(2))),
+                Collections.singletonList(dn(users.get(3)))));
+    }
+
+    @Test
+    public void testGroupEntryIsModifiedOnceAfterUserEntries() throws Exception {
+        final List<User> users = setupUsers();
+        final String group = "cn=group,ou=groups";
+        dao.setBaseGroupDnString("ou=groups");
+        dao.setMaxGroupMembershipModifySize(2);
+
+        // record the DN of every modify
+        final List<String> dns = new ArrayList<>();
+        final ProviderConnection provider = mock(ProviderConnection.class);
+        when(connection.getProviderConnection()).thenReturn(provider);
+        when(provider.modify(any())).thenAnswer(i -> {
+            dns.add(((ModifyRequest) i.getArgument(0)).getDn());
+            return new Response<>(null, ResultCode.SUCCESS);
+        });
+
+        dao.addToGroup(users, DnUtils.toDn(group).asGroup(), false);
+
+        // the group entry is only modified after all user entries, in chunks of maxGroupMembershipModifySize values
+        assertThat(dns, contains(dn(users.get(0)), dn(users.get(1)), dn(users.get(2)), dn(users.get(3)), group, group));
+    }
+
+    @Test
+    public void testGroupMembershipFailureUpdatesGroupForModifiedUsers() throws Exception {
+        final List<User> users = setupUsers();
+        final String failing = dn(users.get(3));
+        dao.setBaseGroupDnString("ou=groups");
+        dao.setMaxGroupMembershipModifySize(2);
+
+        // record the member values of every modify of the group entry
+        final List<List<String>> members = new ArrayList<>();
+        final ProviderConnection provider = mock(ProviderConnection.class);
+        when(connection.getProviderConnection()).thenReturn(provider);
+        when(provider.modify(any())).thenAnswer(i -> {
+            final ModifyRequest request = i.getArgument(0);
+            final LdapAttribute attribute = request.getAttributeModifications()[0].getAttribute();
+            if (attribute.getName().equals(LDAP_ATTR_MEMBER)) {
+                members.add(new ArrayList<>(attribute.getStringValues()));
+            } else if (request.getDn().equals(failing)) {
+                throw new LdapException("no such object", ResultCode.NO_SUCH_OBJECT);
+            }
+            return new Response<>(null, ResultCode.SUCCESS);
+        });
+
+        try {
+            dao.addToGroup(users, DnUtils.toDn("cn=group,ou=groups").asGroup(), false);
+            fail("addToGroup should have failed");
+        } catch (final DaoException expected) {}
+
+        // every user entry modified before the failure is also a member of the group
+        assertThat(members, contains(
+                Arrays.asList(dn(users.get(0)), dn(users.get(1))),
+                Collections.singletonList(dn(users.get(2)))));
+    }
+
+    @Test
+    public void testFindExistingIdentifiers() {
+        final LdaptiveUserDao spy = spy(dao);
+        final List<SearchRequest> requests = new ArrayList<>();
+        doAnswer(i -> {
+            requests.add(i.getArgument(0));
+            return Stream.of(new LdapEntry("cn=a@example.com,ou=users",
+                    new LdapAttribute(LDAP_ATTR_CN, "A@example.com"), new LdapAttribute(LDAP_ATTR_GUID, "guid"),
+                    new LdapAttribute(LDAP_ATTR_THEKEY_GUID, "thekey")));
+        }).when(spy).streamSearchRequest(any(), anyInt());
+
+        final Map<UniqueIdentifier, String> identifiers = new EnumMap<>(UniqueIdentifier.class);
+        identifiers.put(UniqueIdentifier.EMAIL, "a@example.com");
+        identifiers.put(UniqueIdentifier.GUID, "other");
+        identifiers.put(UniqueIdentifier.RELAY_GUID, "relay");
+        identifiers.put(UniqueIdentifier.THEKEY_GUID, "THEKEY");
+        assertThat(spy.findExistingIdentifiers(identifiers),
+                containsInAnyOrder(UniqueIdentifier.EMAIL, UniqueIdentifier.THEKEY_GUID));
+
+        // all identifiers are checked using a single OR filter
+        assertThat(requests, hasSize(1));
+        final String filter = requests.get(0).getSearchFilter().format();
+        assertThat(filter, startsWith("(&(|"));
+        assertThat(filter, allOf(containsString("(cn=a@example.com)"), containsString("(ccciGuid=other)"),
+                containsString("(relayGuid=relay)"), containsString("(thekeyGuid=THEKEY)")));
+    }
+
+    @Test
+    public void testFindExistingIdentifiersWithoutValues() {
+        final LdaptiveUserDao spy = spy(dao);
+        final Map<UniqueIdentifier, String> identifiers = new EnumMap<>(UniqueIdentifier.class);
+        identifiers.put(UniqueIdentifier.EMAIL, null);
+
+        assertThat(spy.findExistingIdentifiers(identifiers), empty());
+        verify(spy, never()).streamSearchRequest(any(), anyInt());
+    }
+
+    @Test
+    public void testFindAllByTheKeyGuidsChunksLookups() {
+        setupBatchMapper();
+        dao.setMaxBatchLookupSize(2);
+        final LdaptiveUserDao spy = spy(dao);
+        final List<SearchRequest> requests = new ArrayList<>();
+        doAnswer(i -> {
+            requests.add(i.getArgument(1));
+            return Collections.emptyIterator();
+        }).when(spy).searchRequestIterator(any(), any(), anyInt());
+
+        assertThat(spy.findAllByTheKeyGuids(Arrays.asList("a", "b", "c", null, "a"), false).entrySet(), empty());
+
+        // duplicate and null values are skipped, the remaining values are looked up in chunks of maxBatchLookupSize
+        assertThat(requests, hasSize(2));
+        assertThat(requests.get(0).getSearchFilter().format(), allOf(
+                containsString("(thekeyGuid=a)"), containsString("(thekeyGuid=b)"),
+                not(containsString("(thekeyGuid=c)"))));
+        assertThat(requests.get(1).getSearchFilter().format(), allOf(
+                containsString("(thekeyGuid=c)"), not(containsString("(thekeyGuid=a)"))));
+    }
+
+    @Test
+    public void testFindAllByTheKeyGuidsMatchesCaseInsensitively() {
+        setupBatchMapper();
+        final LdaptiveUserDao spy = spy(dao);
+        doReturn(Arrays.asList(batchEntry("cn=a,ou=users", "guid-a"), batchEntry("cn=b,ou=users", "GUID-B"))
+                .iterator()).when(spy).searchRequestIterator(any(), any(), anyInt());
+
+        // users are returned for every requested variation of the matching value
+        final Map<String, User> users = spy.findAllByTheKeyGuids(Arrays.asList("GUID-A", "guid-a", "guid-b"), false);
+        assertThat(users.keySet(), containsInAnyOrder("GUID-A", "guid-a", "guid-b"));
+        assertThat(users.get("GUID-A").getTheKeyGuid(), is("guid-a"));
+        assertThat(users.get("guid-b").getTheKeyGuid(), is("GUID-B"));
+    }
+
+    @Test
+    public void testFindAllByTheKeyGuidsPrefersActiveUsers() {
+        setupBatchMapper();
+        final LdaptiveUserDao spy = spy(dao);
+        doReturn(Arrays.asList(batchEntry("cn=" + LDAP_DEACTIVATED_PREFIX + "a,ou=users", "guid"),
+                batchEntry("cn=a,ou=users", "guid"), batchEntry("cn=" + LDAP_DEACTIVATED_PREFIX + "b,ou=users", "guid"))
+                .iterator()).when(spy).searchRequestIterator(any(), any(), anyInt());
+
+        final User user = spy.findAllByTheKeyGuids(Collections.singleton("guid"), true).get("guid");
+        assertThat(user.isDeactivated(), is(false));
+    }
+
+    private void setupBatchMapper() {
+        @SuppressWarnings("unchecked") final LdapEntryMapper<User> mapper = mock(LdapEntryMapper.class);
+        doAnswer(i -> {
+            final LdapEntry entry = i.getArgument(0);
+            final User user = i.getArgument(1);
+            user.setTheKeyGuid(entry.getAttribute(LDAP_ATTR_THEKEY_GUID).getStringValue());
+            user.setDeactivated(entry.getDn().startsWith("cn=" + LDAP_DEACTIVATED_PREFIX));
+            return null;
+        }).when(mapper).map(any(LdapEntry.class), any(User.class));
+        dao.setUserMapper(mapper);
+    }
+
+    private static LdapEntry batchEntry(final String dn, final String guid) {
+        return new LdapEntry(dn, new LdapAttribute(LDAP_ATTR_THEKEY_GUID, guid));
+    }
+
+    private List<User> setupUsers() {
+        @SuppressWarnings("unchecked") final LdapEntryMapper<User> mapper = mock(LdapEntryMapper.class);
+        when(mapper.mapDn(any())).thenAnswer(i -> dn(i.getArgument(0)));
+        dao.setUserMapper(mapper);
+        dao.setUpdateAllConcurrency(2);
+        dao.setUpdateAllExecutor(MoreExecutors.newDirectExecutorService());
+        return Arrays.asList(newUser(), newUser(), newUser(), newUser());
+    }
+
+    private static String dn(final User user) {
+        return "cn=" + user.getEmail() + ",ou=users";
+    }
+
+    @Test
+    public void testGetProjectionReturnAttributes() {
+        final List<String> attributes =
+                Arrays.asList(dao.getProjectionReturnAttributes(EnumSet.of(User.Attr.NAME, User.Attr.ORCA)));
+        assertThat(attributes, hasItems(LDAP_ATTR_CN, LDAP_ATTR_THEKEY_GUID, LDAP_ATTR_FIRSTNAME, LDAP_ATTR_LASTNAME));
+        assertThat(attributes, not(hasItem("*")));
+        assertThat(attributes, not(hasItem(LDAP_ATTR_SECURITY_ANSWER)));
+        assertThat(attributes, not(hasItem(LDAP_ATTR_PASSWORDCHANGEDTIME)));
+
+        assertThat(Arrays.asList(dao.getProjectionReturnAttributes(EnumSet.of(User.Attr.PASSWORD))),
+                hasItem(LDAP_ATTR_PASSWORDCHANGEDTIME));
+    }
 }
@@ -0,0 +1,114 @@
+package org.ccci.idm.user.ldaptive.dao;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ldaptive.Connection;
+import org.ldaptive.ConnectionFactory;
+import org.ldaptive.LdapEntry;
+import org.ldaptive.SearchRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class PartitionedSearchSpliteratorTest {
+    private final SearchRequest PARTITION1 = new SearchRequest("ou=1");
+    private final SearchRequest PARTITION2 = new SearchRequest("ou=2");
+    private final SearchRequest PARTITION3 = new SearchRequest("ou=3");
+
+    private ConnectionFactory connectionFactory;
+    private List<Connection> connections;
+
+    @Before
+    public void setup() throws Exception {
+        connections = new CopyOnWriteArrayList<>();
+        connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.getConnection()).thenAnswer(i -> {
+            final Connection connection = mock(Connection.class);
+            when(connection.isOpen()).thenReturn(true);
+            connections.add(connection);
+            return connection;
+        });
+    }
+
+    @Test
+    public void testSequentialScan() throws Exception {
+        final PartitionedSearchSpliterator spliterator = spliterator(PARTITION1, PARTITION2, PARTITION3);
+        try (Stream<LdapEntry> entries = StreamSupport.stream(spliterator, false).onClose(spliterator::close)) {
+            assertThat(entries.map(LdapEntry::getDn).collect(Collectors.toList()),
+                    containsInAnyOrder("cn=a,ou=1", "cn=b,ou=1", "cn=a,ou=2", "cn=b,ou=2", "cn=a,ou=3", "cn=b,ou=3"));
+        }
+
+        // a connection is opened and closed for every partition
+        assertThat(connections, hasSize(3));
+        for (final Connection connection : connections) {
+            verify(connection).open();
+            verify(connection).close();
+        }
+    }
+
+    @Test
+    public void testParallelScan() {
+        final PartitionedSearchSpliterator spliterator = spliterator(PARTITION1, PARTITION2, PARTITION3);
+        try (Stream<LdapEntry> entries = StreamSupport.stream(spliterator, true).onClose(spliterator::close)) {
+            assertThat(entries.map(LdapEntry::getDn).collect(Collectors.toList()),
+                    containsInAnyOrder("cn=a,ou=1", "cn=b,ou=1", "cn=a,ou=2", "cn=b,ou=2", "cn=a,ou=3", "cn=b,ou=3"));
+        }
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        final PartitionedSearchSpliterator spliterator = spliterator(PARTITION1, PARTITION2, PARTITION3);
+        final Spliterator<LdapEntry> split1 = spliterator.trySplit();
+        final Spliterator<LdapEntry> split2 = spliterator.trySplit();
+        assertThat(spliterator.trySplit(), nullValue());
+
+        assertThat(drain(spliterator), containsInAnyOrder("cn=a,ou=1", "cn=b,ou=1"));
+        assertThat(drain(split2), containsInAnyOrder("cn=a,ou=2", "cn=b,ou=2"));
+        assertThat(drain(split1), containsInAnyOrder("cn=a,ou=3", "cn=b,ou=3"));
+    }
+
+    @Test
+    public void testCloseClosesAllPartitions() throws Exception {
+        final PartitionedSearchSpliterator spliterator = spliterator(PARTITION1, PARTITION2);
+        final Spliterator<LdapEntry> split = spliterator.trySplit();
+        spliterator.tryAdvance(e -> {});
+        split.tryAdvance(e -> {});
+        assertThat(connections, hasSize(2));
+        for (final Connection connection : connections) {
+            verify(connection, never()).close();
+        }
+
+        spliterator.close();
+        for (final Connection connection : connections) {
+            verify(connection).close();
+        }
+    }
+
+    private PartitionedSearchSpliterator spliterator(final SearchRequest... partitions) {
+        return new PartitionedSearchSpliterator(connectionFactory, Arrays.asList(partitions),
+                (conn, request) -> Arrays.asList(new LdapEntry("cn=a," + request.getBaseDn()),
+                        new LdapEntry("cn=b," + request.getBaseDn())).iterator());
+    }
+
+    private static List<String> drain(final Spliterator<LdapEntry> spliterator) {
+        if (spliterator == null) {
+            return Collections.emptyList();
+        }
+        return StreamSupport.stream(spliterator, false).map(LdapEntry::getDn).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,37 @@
+package org.ccci.idm.user.ldaptive.dao.filter;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+public class FilterPlannerTest {
+    private final FilterPlanner planner = new FilterPlanner();
+
+    @Test
+    public void verifyAndOrdering() {
+        final BaseFilter filter = new LikeFilter("sn", "Sm*")
+                .and(new EqualsFilter("givenName", "John"), new EqualsFilter("objectClass", "person"),
+                        new LikeFilter("cn", "$GUID$-*").not(), new EqualsFilter("employeeNumber", "0001"));
+        assertEquals("(&(employeeNumber=0001)(givenName=John)(objectClass=person)(sn=Sm*)(!(cn=$GUID$-*)))",
+                planner.plan(filter).format());
+    }
+
+    @Test
+    public void verifyNestedFilters() {
+        final BaseFilter nested = new EqualsFilter("sn", "b")
+                .and(new LikeFilter("cn", "x*"), new EqualsFilter("thekeyGuid", "guid"));
+        final BaseFilter filter = new EqualsFilter("objectClass", "person")
+                .and(new OrFilter(new EqualsFilter("sn", "a"), nested))
+                .and(new EqualsFilter("cn", "c"));
+        assertEquals("(&(cn=c)(|(sn=a)(&(thekeyGuid=guid)(sn=b)(cn=x*)))(objectClass=person))",
+                planner.plan(filter).format());
+    }
+
+    @Test
+    public void verifyConfiguredCosts() {
+        planner.setAttributeCosts(ImmutableMap.of("SN", 0));
+        final BaseFilter filter = new EqualsFilter("cn", "c").and(new EqualsFilter("sn", "s"));
+        assertEquals("(&(sn=s)(cn=c))", planner.plan(filter).format());
+    }
+}
@@ -0,0 +1,30 @@
+package org.ccci.idm.user.ldaptive.dao.filter;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FilterTemplateTest {
+    @Test
+    public void verifyApplyMatchesEqualsFilter() {
+        final FilterTemplate template = FilterTemplate.compile(new ParameterFilter("a")
+                .or(new ParameterFilter("b").and(new PresentFilter("a").not()), new ParameterFilter("c", 1)));
+
+        for (final String value : new String[]{"simple", "", null, "a*b", "(x)\\y", "nul\0", "unicodé"}) {
+            final BaseFilter expected = new EqualsFilter("a", value)
+                    .or(new EqualsFilter("b", value).and(new PresentFilter("a").not()), new EqualsFilter("c", "other"));
+            assertEquals(expected.format(), template.apply(value, "other").format());
+        }
+    }
+
+    @Test
+    public void verifyConstantTemplate() {
+        final BaseFilter filter = new EqualsFilter("objectClass", "person").and(new LikeFilter("cn", "a*"));
+        assertEquals(filter.format(), FilterTemplate.compile(filter).apply().format());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void verifyMissingParameters() {
+        FilterTemplate.compile(new ParameterFilter("a").and(new ParameterFilter("b", 1))).apply("a");
+    }
+}
@@ -0,0 +1,130 @@
+package org.ccci.idm.user.ldaptive.dao.mapper;
+
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_GROUPS;
+
+import org.ccci.idm.user.Group;
+import org.ccci.idm.user.ldaptive.Dn;
+import org.ccci.idm.user.ldaptive.dao.util.DnUtils;
+import org.ldaptive.LdapAttribute;
+import org.ldaptive.LdapEntry;
+import org.ldaptive.auth.NoOpDnResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the per group work done when mapping users (getGroupValues) and the DnUtils operations it is
+ * built on. The legacy benchmarks reproduce the previous subList based ancestry check for comparison.
+ *
+ * Run with: mvn -pl ldaptive test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.ccci.idm.user.ldaptive.dao.mapper.GroupParsingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupParsingBenchmark {
+    private static final int GROUPS = 300;
+
+    private UserLdapEntryMapper mapper;
+    private Dn baseGroupDn;
+    private LdapEntry entry;
+    private List<String> rawDns;
+    private List<Dn> dns;
+
+    @Setup
+    public void setup() {
+        baseGroupDn = DnUtils.toDn("ou=groups,ou=idm,dc=cru,dc=org");
+
+        mapper = new UserLdapEntryMapper();
+        mapper.setDnResolver(new NoOpDnResolver());
+        mapper.setBaseGroupDn(baseGroupDn);
+
+        // 2/3 of the groups are under the base group dn
+        rawDns = new ArrayList<>(GROUPS);
+        for (int i = 0; i < GROUPS; i++) {
+            if (i % 3 == 0) {
+                rawDns.add("cn=Group " + i + ",ou=Other,ou=idm,dc=cru,dc=org");
+            } else {
+                rawDns.add("cn=Group " + i + ",ou=Team " + (i % 10) + ",ou=Groups,ou=IDM,dc=cru,dc=org");
+            }
+        }
+        dns = new ArrayList<>(GROUPS);
+        for (final String rawDn : rawDns) {
+            dns.add(DnUtils.toDn(rawDn));
+        }
+        entry = new LdapEntry();
+        entry.addAttribute(new LdapAttribute(LDAP_ATTR_GROUPS, rawDns.toArray(new String[0])));
+    }
+
+    @Benchmark
+    public Collection<Group> getGroupValues() {
+        return mapper.getGroupValues(entry, LDAP_ATTR_GROUPS);
+    }
+
+    @Benchmark
+    public void toDnSafe(final Blackhole blackhole) {
+        for (final String rawDn : rawDns) {
+            blackhole.consume(DnUtils.toDnSafe(rawDn));
+        }
+    }
+
+    @Benchmark
+    public void toGroup(final Blackhole blackhole) {
+        for (final Dn dn : dns) {
+            blackhole.consume(DnUtils.toGroup(dn));
+        }
+    }
+
+    @Benchmark
+    public void isDescendantOfOrEqualTo(final Blackhole blackhole) {
+        for (final String rawDn : rawDns) {
+            blackhole.consume(DnUtils.toDn(rawDn).isDescendantOfOrEqualTo(baseGroupDn));
+        }
+    }
+
+    @Benchmark
+    public void legacyIsDescendantOfOrEqualTo(final Blackhole blackhole) {
+        for (final String rawDn : rawDns) {
+            blackhole.consume(legacyIsDescendantOfOrEqualTo(DnUtils.toDn(rawDn), baseGroupDn));
+        }
+    }
+
+    private static boolean legacyIsDescendantOfOrEqualTo(final Dn dn, final Dn ancestor) {
+        final List<Dn.Component> components = dn.getComponents();
+        final List<Dn.Component> ancestorComponents = ancestor.getComponents();
+        if (ancestorComponents.size() > components.size()) {
+            return false;
+        }
+        final List<Dn.Component> prefix = components.subList(0, ancestorComponents.size());
+        for (int i = 0; i < prefix.size(); i++) {
+            final Dn.Component a = prefix.get(i);
+            final Dn.Component b = ancestorComponents.get(i);
+            if (!a.type.equalsIgnoreCase(b.type) || !a.value.equalsIgnoreCase(b.value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(GroupParsingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -1,22 +1,31 @@
 package org.ccci.idm.user.ldaptive.dao.mapper;
 
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_CN;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_FIRSTNAME;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_GROUPS;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_LASTNAME;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_OBJECTCLASS;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_SECURITY_QUESTION;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_THEKEY_GUID;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_OBJECTCLASS_PERSON;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import com.google.common.collect.ImmutableSet;
 import org.ccci.idm.user.Group;
 import org.ccci.idm.user.User;
 import org.ccci.idm.user.ldaptive.Dn;
+import org.ccci.idm.user.ldaptive.dao.util.DnUtils;
 import org.junit.Test;
 import org.ldaptive.LdapAttribute;
 import org.ldaptive.LdapEntry;
 import org.ldaptive.auth.NoOpDnResolver;
 
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.UUID;
 
 public class UserLdapEntryMapperTest {
@@ -98,4 +107,48 @@ public void testFutureObjectClassCompatibility() throws Exception {
             assertTrue(result.contains(objectClass2));
         }
     }
+
+    @Test
+    public void testProjectedMapping() throws Exception {
+        final UserLdapEntryMapper mapper = this.getMapper();
+
+        final LdapEntry entry = new LdapEntry();
+        entry.addAttribute(new LdapAttribute(LDAP_ATTR_CN, "test@example.com"));
+        entry.addAttribute(new LdapAttribute(LDAP_ATTR_THEKEY_GUID, "guid"));
+        entry.addAttribute(new LdapAttribute(LDAP_ATTR_FIRSTNAME, "First"));
+        entry.addAttribute(new LdapAttribute(LDAP_ATTR_LASTNAME, "Last"));
+        entry.addAttribute(new LdapAttribute(LDAP_ATTR_SECURITY_QUESTION, "Question"));
+
+        // only identity & projected attributes are populated
+        final User projected = new User();
+        mapper.map(entry, projected, EnumSet.of(User.Attr.NAME));
+        assertEquals("test@example.com", projected.getEmail());
+        assertEquals("guid", projected.getTheKeyGuid());
+        assertEquals("First", projected.getFirstName());
+        assertEquals("Last", projected.getLastName());
+        assertNull(projected.getSecurityQuestion());
+
+        // a full mapping populates everything
+        final User full = new User();
+        mapper.map(entry, full);
+        assertEquals("First", full.getFirstName());
+        assertEquals("Question", full.getSecurityQuestion());
+    }
+
+    @Test
+    public void testLazyGroups() throws Exception {
+        final UserLdapEntryMapper mapper = this.getMapper();
+        mapper.setBaseGroupDn(DnUtils.toDn("ou=groups"));
+        mapper.setLazyGroups(true);
+
+        final LdapEntry entry = new LdapEntry();
+        entry.addAttribute(new LdapAttribute(LDAP_ATTR_GROUPS, "cn=test,ou=groups", "cn=test2,ou=other"));
+
+        final User user = new User();
+        mapper.map(entry, user);
+
+        // groups outside of the base group DN are filtered when resolved
+        assertEquals(1, user.getGroups().size());
+        assertEquals(DnUtils.toDn("cn=test,ou=groups").asGroup(), user.getGroups().iterator().next());
+    }
 }
@@ -1,6 +1,7 @@
 package org.ccci.idm.user.ldaptive.dao.util;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import org.ccci.idm.user.ldaptive.Dn;
@@ -28,4 +29,19 @@ public void verifyParse() throws Exception {
         assertThat(DnUtils.toDn(rawDn.toUpperCase()), is(expected));
         assertThat(DnUtils.toDn(rawDn.toLowerCase()), is(expected));
     }
+
+    @Test
+    public void verifyInterning() throws Exception {
+        final String rawDn = "cn=name,ou=groups,dc=org";
+
+        final Dn dn = DnUtils.toDn(rawDn);
+        assertThat(DnUtils.toDn(rawDn), sameInstance(dn));
+        assertThat(DnUtils.toGroup(dn), sameInstance(DnUtils.toGroup(dn)));
+        assertThat(DnUtils.toString(dn), is(rawDn));
+
+        // equal DNs with different casing retain their own formatting
+        final Dn upper = DnUtils.toDn(rawDn.toUpperCase());
+        assertThat(upper, is(dn));
+        assertThat(DnUtils.toString(upper), is(rawDn.toUpperCase()));
+    }
 }
@@ -0,0 +1,115 @@
+package org.ccci.idm.user.okta.dao
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.ccci.idm.user.okta.OktaGroup
+import org.slf4j.LoggerFactory
+import java.util.Collections
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+private val LOG = LoggerFactory.getLogger(OktaGroupCatalogue::class.java)
+
+/**
+ * In-memory snapshot of all Okta groups, indexed by id and by the `-`/`:` separated segments of the group name. The
+ * snapshot is loaded on first use and can be refreshed periodically in the background.
+ */
+class OktaGroupCatalogue(private val loader: () -> Iterable<OktaGroup>) : AutoCloseable {
+    @Volatile
+    private var snapshot: Snapshot? = null
+    private var executor: ScheduledExecutorService? = null
+
+    val isLoaded get() = snapshot != null
+    val groups get() = current().groups
+
+    fun refresh() {
+        snapshot = Snapshot(loader())
+    }
+
+    /**
+     * Refresh the catalogue in the background every [interval], a failed refresh keeps the previous snapshot.
+     */
+    @Synchronized
+    fun refreshEvery(interval: Long, unit: TimeUnit) {
+        executor?.shutdownNow()
+        executor = Executors.newSingleThreadScheduledExecutor(
+            ThreadFactoryBuilder().setDaemon(true).setNameFormat("okta-group-catalogue-%d").build()
+        ).apply {
+            scheduleWithFixedDelay({
+                try {
+                    refresh()
+                } catch (e: Exception) {
+                    LOG.warn("Unable to refresh the Okta group catalogue", e)
+                }
+            }, if (isLoaded) interval else 0, interval, unit)
+        }
+    }
+
+    fun getGroup(id: String?) = id?.let { current().byId[it] }
+
+    /**
+     * Return all groups that are equal to or a descendant of the specified prefix, matching
+     * [OktaGroup.isDescendantOfOrEqualTo].
+     */
+    fun getGroups(prefix: String?): List<OktaGroup> {
+        val snapshot = current()
+        if (prefix == null) return snapshot.groups
+
+        var node = snapshot.root
+        for (segment in prefix.segments()) {
+            node = node.children[segment] ?: return emptyList()
+        }
+        return mutableListOf<OktaGroup>().also { node.collect(it) }
+    }
+
+    @Synchronized
+    override fun close() {
+        executor?.shutdownNow()
+        executor = null
+    }
+
+    private fun current() = snapshot ?: synchronized(this) {
+        snapshot ?: Snapshot(loader()).also { snapshot = it }
+    }
+
+    private class Snapshot(groups: Iterable<OktaGroup>) {
+        val groups: List<OktaGroup> = Collections.unmodifiableList(groups.toList())
+        val byId = this.groups.filter { it.id != null }.associateBy { it.id!! }
+        val root = Node()
+
+        init {
+            this.groups.forEach { group ->
+                val name = group.name ?: return@forEach
+                var node = root
+                for (segment in name.segments()) {
+                    node = node.children.getOrPut(segment) { Node() }
+                }
+                node.groups.add(group)
+            }
+        }
+    }
+
+    private class Node {
+        val children = mutableMapOf<String, Node>()
+        val groups = mutableListOf<OktaGroup>()
+
+        fun collect(into: MutableList<OktaGroup>) {
+            into.addAll(groups)
+            children.values.forEach { it.collect(into) }
+        }
+    }
+}
+
+// split a group name before every hierarchy separator, the separator stays with the segment it starts
+private fun String.segments(): List<String> {
+    val segments = mutableListOf<String>()
+    var start = 0
+    forEachIndexed { i, c ->
+        if (c == '-' || c == ':') {
+            segments.add(substring(start, i))
+            start = i
+        }
+    }
+    segments.add(substring(start))
+    return segments
+}
@@ -0,0 +1,97 @@
+package org.ccci.idm.user.okta.dao
+
+import com.google.common.util.concurrent.RateLimiter
+import com.okta.sdk.resource.ResourceException
+import org.ccci.idm.user.dao.exception.InterruptedDaoException
+import java.util.EnumMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+private const val HTTP_TOO_MANY_REQUESTS = 429
+
+/**
+ * Paces requests sent to Okta so that bulk operations stay below the org's rate limits instead of tripping them.
+ *
+ * Every request acquires a token from the token bucket of its endpoint family, and a slot from an adaptive
+ * concurrency limit. The concurrency limit grows additively while requests succeed and is halved every time Okta
+ * responds with a 429 (AIMD).
+ */
+class OktaRequestScheduler @JvmOverloads constructor(
+    requestsPerSecond: Map<Family, Double> = emptyMap(),
+    private val maxConcurrency: Int = 16,
+    private val minConcurrency: Int = 1
+) {
+    enum class Family(internal val defaultRequestsPerSecond: Double) { USERS(10.0), GROUPS(5.0), SEARCH(5.0) }
+
+    private val buckets = EnumMap<Family, RateLimiter>(Family::class.java).apply {
+        Family.values().forEach { put(it, RateLimiter.create(requestsPerSecond[it] ?: it.defaultRequestsPerSecond)) }
+    }
+
+    private val lock = ReentrantLock()
+    private val slotAvailable = lock.newCondition()
+    private var limit = maxConcurrency.toDouble()
+    private var inFlight = 0
+
+    init {
+        require(minConcurrency in 1..maxConcurrency) { "invalid concurrency range: $minConcurrency..$maxConcurrency" }
+    }
+
+    val concurrencyLimit get() = lock.withLock { limit.toInt() }
+
+    fun <T> execute(family: Family, request: () -> T): T {
+        buckets.getValue(family).acquire()
+        acquireSlot()
+        var rateLimited = false
+        try {
+            return request()
+        } catch (e: ResourceException) {
+            rateLimited = e.status == HTTP_TOO_MANY_REQUESTS
+            throw e
+        } finally {
+            releaseSlot(rateLimited)
+        }
+    }
+
+    /**
+     * Wrap the iterator of a paged Okta collection so that every request for a subsequent page acquires a token and a
+     * slot from the family as well. The SDK requests the next page from within hasNext() once the current page is
+     * exhausted, so a page boundary is assumed after every [pageSize] items.
+     */
+    internal fun <T> pagedIterator(family: Family, pageSize: Int, source: Iterator<T>) = object : Iterator<T> {
+        private var count = 0
+        private var scheduledAt = 0
+
+        override fun hasNext(): Boolean {
+            if (count == 0 || count % pageSize != 0 || count == scheduledAt) return source.hasNext()
+            scheduledAt = count
+            return execute(family) { source.hasNext() }
+        }
+
+        override fun next(): T {
+            if (!hasNext()) throw NoSuchElementException()
+            return source.next().also { count++ }
+        }
+    }
+
+    private fun acquireSlot() = lock.withLock {
+        try {
+            while (inFlight >= limit.toInt()) slotAvailable.await(1, TimeUnit.SECONDS)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw InterruptedDaoException(e)
+        }
+        inFlight++
+    }
+
+    private fun releaseSlot(rateLimited: Boolean) = lock.withLock {
+        inFlight--
+        limit = when {
+            // multiplicative decrease
+            rateLimited -> maxOf(minConcurrency.toDouble(), limit / 2)
+            // additive increase, roughly 1 slot per limit successful requests
+            else -> minOf(maxConcurrency.toDouble(), limit + 1 / limit)
+        }
+        slotAvailable.signalAll()
+    }
+}
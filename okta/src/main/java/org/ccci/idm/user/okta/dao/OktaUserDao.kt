@@ -1,11 +1,18 @@
 package org.ccci.idm.user.okta.dao
 
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.google.common.collect.Iterators
+import com.google.common.util.concurrent.ThreadFactoryBuilder
 import com.okta.sdk.client.Client
 import com.okta.sdk.resource.ResourceException
 import com.okta.sdk.resource.user.UserBuilder
+import com.okta.sdk.resource.user.UserList
+import com.okta.sdk.resource.user.UserProfile
 import com.okta.sdk.resource.user.UserStatus
 import org.ccci.idm.user.Group
 import org.ccci.idm.user.SearchQuery
+import org.ccci.idm.user.UniqueIdentifier
 import org.ccci.idm.user.User
 import org.ccci.idm.user.dao.AbstractUserDao
 import org.ccci.idm.user.dao.exception.ExceededMaximumAllowedResultsException
@@ -13,22 +20,41 @@ import org.ccci.idm.user.exception.GroupNotFoundException
 import org.ccci.idm.user.exception.InvalidPasswordUserException
 import org.ccci.idm.user.exception.UserNotFoundException
 import org.ccci.idm.user.okta.OktaGroup
+import org.ccci.idm.user.okta.dao.OktaRequestScheduler.Family.GROUPS
+import org.ccci.idm.user.okta.dao.OktaRequestScheduler.Family.SEARCH
+import org.ccci.idm.user.okta.dao.OktaRequestScheduler.Family.USERS
 import org.ccci.idm.user.okta.dao.exception.OktaDaoException
+import org.ccci.idm.user.okta.dao.util.PrefetchingIterator
 import org.ccci.idm.user.okta.dao.util.oktaUserId
 import org.ccci.idm.user.okta.dao.util.searchUsers
 import org.ccci.idm.user.query.Attribute
 import org.ccci.idm.user.query.BooleanExpression
 import org.ccci.idm.user.query.ComparisonExpression
+import org.ccci.idm.user.query.ConstantExpression
 import org.ccci.idm.user.query.Expression
+import org.ccci.idm.user.query.ExpressionNormalizer
 import org.joda.time.Instant
+import org.slf4j.LoggerFactory
 import java.util.EnumSet
+import java.util.Locale
+import java.util.Spliterator
+import java.util.Spliterators
 import java.util.concurrent.BlockingQueue
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 import java.util.stream.Stream
+import java.util.stream.StreamSupport
+
+private val LOG = LoggerFactory.getLogger(OktaUserDao::class.java)
 
 private const val PROFILE_THEKEY_GUID = "theKeyGuid"
 private const val PROFILE_RELAY_GUID = "relayGuid"
 private const val PROFILE_EMAIL = "email"
+private const val PROFILE_LOGIN = "login"
 private const val PROFILE_FIRST_NAME = "firstName"
 private const val PROFILE_NICK_NAME = "nickName"
 private const val PROFILE_LAST_NAME = "lastName"
@@ -56,47 +82,289 @@ private const val PROFILE_GR_PERSON_ID = "thekeyGrPersonId"
 private const val PROFILE_ORCA = "orca"
 
 private val DEFAULT_ATTRS = arrayOf(User.Attr.EMAIL, User.Attr.NAME, User.Attr.FLAGS)
+// default page sizes of the Okta list endpoints, the SDK doesn't request a specific page size
+private const val USERS_PAGE_SIZE = 200
+private const val GROUPS_PAGE_SIZE = 10_000
+private const val GROUP_MEMBERS_PAGE_SIZE = 1_000
+// profile attributes that only ever have a single value, used when normalizing search expressions
+private val SINGLE_VALUED_ATTRIBUTES = EnumSet.of(
+    Attribute.GUID, Attribute.FIRST_NAME, Attribute.LAST_NAME, Attribute.US_EMPLOYEE_ID, Attribute.US_DESIGNATION
+)
 private const val DEACTIVATED_PREFIX = "\$GUID-"
 private const val DEACTIVATED_SUFFIX = "@deactivated.cru.org"
 private const val DEACTIVATED_LEGACY = "\$GUID$-="
 
-class OktaUserDao(private val okta: Client, private val listeners: List<Listener>? = null) : AbstractUserDao() {
+class OktaUserDao(
+    private val okta: Client,
+    private val listeners: List<Listener>? = null
+) : AbstractUserDao(), AutoCloseable {
     var maxSearchResults = SEARCH_NO_LIMIT
     var initialGroups: Set<String> = emptySet()
     var loadGroups = true
+    var maxBatchLookupSize = 50
+
+    /**
+     * When enabled, streamUsersInGroup searches Okta for users matching the expression and checks the group membership
+     * of each match, instead of listing every member of the group. Listing the group members is still used when the
+     * expression can't be translated to an Okta search or matches more than [groupSearchCandidateLimit] users.
+     * The memberships of the candidates are read from the group membership cache when it is enabled, otherwise every
+     * candidate costs a request to Okta.
+     */
+    var groupSearchPushDown = false
+    var groupSearchCandidateLimit = 200
+
+    /**
+     * How long (in seconds) the group memberships of a user are cached for, 0 disables the cache. Cached memberships
+     * are invalidated when a user is added to or removed from a group through this DAO.
+     */
+    var groupMembershipCacheTtl = 0L
+        set(value) {
+            field = value
+            groupMemberships = buildGroupMembershipCache()
+            groupMembershipSnapshot = null
+        }
+    var groupMembershipCacheSize = 10_000L
+        set(value) {
+            field = value
+            groupMemberships = buildGroupMembershipCache()
+        }
+
+    /**
+     * When enabled, users returned by the stream methods have their groups loaded. If the group membership cache is
+     * enabled the memberships of all users are bulk loaded in the background from the group member lists once per
+     * cache TTL. The bulk loaded memberships are kept as a separate snapshot that isn't limited by
+     * [groupMembershipCacheSize].
+     */
+    var streamLoadGroups = false
+
+    /**
+     * The executor used to bulk load group memberships, defaults to the pool used for prefetching users.
+     */
+    var groupMembershipLoadExecutor: Executor? = null
+
+    /**
+     * The maximum number of users passed to [Listener.onUsersLoaded] at once.
+     */
+    var listenerBatchSize = 100
+
+    /**
+     * The number of users buffered ahead of the consumer when streaming users, 0 disables prefetching. When enabled,
+     * the Okta user list is paged through on a background thread so the next page is requested while the current
+     * page is being processed.
+     */
+    var listPrefetchSize = 0
+
+    /**
+     * Optional scheduler used to pace the requests sent to Okta.
+     */
+    var requestScheduler: OktaRequestScheduler? = null
+
+    /**
+     * The maximum number of theKeyGuid to Okta user id mappings remembered, 0 disables the cache. The mappings are
+     * used to resolve users that don't have an Okta user id without searching Okta. Only users found by single lookups
+     * or created through this DAO are remembered, users loaded in bulk would churn out the mappings needed by writes.
+     */
+    var oktaUserIdCacheSize = 10_000L
+        set(value) {
+            field = value
+            oktaUserIds = buildOktaUserIdCache()
+        }
+
+    /**
+     * When enabled, updates that don't change the password only send the modified profile attributes to Okta
+     * instead of fetching the user and sending back the full user.
+     */
+    var partialProfileUpdates = false
+
+    /**
+     * How often (in seconds) the in-memory group catalogue is refreshed in the background, 0 disables the catalogue.
+     * When enabled, group lookups and listings are served from the catalogue instead of Okta. The catalogue is loaded
+     * and the background refresh started on first use, and stopped by [close].
+     */
+    var groupCatalogueRefreshInterval = 0L
+        @Synchronized set(value) {
+            field = value
+            catalogue?.close()
+            catalogue = null
+        }
+
+    private val prefetchExecutorDelegate = lazy {
+        Executors.newCachedThreadPool(ThreadFactoryBuilder().setDaemon(true).setNameFormat("okta-prefetch-%d").build())
+    }
+    private val prefetchExecutor by prefetchExecutorDelegate
+
+    private var groupMemberships: Cache<String, List<Group>>? = null
+    @Volatile
+    private var groupMembershipSnapshot: GroupMembershipSnapshot? = null
+    private val groupMembershipsBulkLoaded = AtomicLong(0)
+    // every invalidation gets a new generation, so a snapshot started before an invalidation isn't used for that user
+    private val groupMembershipGeneration = AtomicLong(0)
+    private val groupMembershipInvalidations = ConcurrentHashMap<String, Long>()
+    private var oktaUserIds: Cache<String, String>? = buildOktaUserIdCache()
+    @Volatile
+    private var catalogue: OktaGroupCatalogue? = null
+    @Volatile
+    private var closed = false
+
+    private val groupCatalogue: OktaGroupCatalogue?
+        get() = catalogue ?: synchronized(this) {
+            if (closed || groupCatalogueRefreshInterval <= 0) return null
+            catalogue ?: OktaGroupCatalogue {
+                schedule(GROUPS) { okta.listGroups(null, null, null) }.pagedSequence(GROUPS, GROUPS_PAGE_SIZE)
+                    .map { group -> group.asIdmGroup() }.toList()
+            }.apply {
+                refresh()
+                refreshEvery(groupCatalogueRefreshInterval, TimeUnit.SECONDS)
+            }.also { catalogue = it }
+        }
+
+    private fun findOktaUser(user: User): com.okta.sdk.resource.user.User? {
+        user.oktaUserId?.let { return findOktaUserByOktaUserId(it) }
+        val guid = user.theKeyGuid ?: return null
+        oktaUserIds?.getIfPresent(guid)?.let { id ->
+            try {
+                return findOktaUserByOktaUserId(id)
+            } catch (e: ResourceException) {
+                // the cached user no longer exists, fall back to searching for the user
+                if (e.status != 404) throw e
+                oktaUserIds?.invalidate(guid)
+            }
+        }
+        return findOktaUserByTheKeyGuid(guid)
+    }
+
+    /**
+     * Run a request using the Okta user id of the user. When the id came from [oktaUserIds] and the user no longer
+     * exists in Okta, the stale mapping is dropped and the request is retried once with the id found by searching.
+     */
+    private fun <T> withOktaUserId(user: User, request: (String) -> T): T {
+        val guid = user.theKeyGuid
+        val cachedId = if (user.oktaUserId == null && guid != null) oktaUserIds?.getIfPresent(guid) else null
+        if (guid == null || cachedId == null) {
+            return request(user.oktaUserId ?: findOktaUser(user)?.id ?: throw UserNotFoundException())
+        }
+
+        try {
+            return request(cachedId)
+        } catch (e: ResourceException) {
+            // the cached user no longer exists, fall back to searching for the user
+            if (e.status != 404) throw e
+            oktaUserIds?.invalidate(guid)
+        }
+        return request(findOktaUserByTheKeyGuid(guid)?.id ?: throw UserNotFoundException())
+    }
 
-    private fun findOktaUser(user: User) =
-        findOktaUserByOktaUserId(user.oktaUserId) ?: findOktaUserByTheKeyGuid(user.theKeyGuid)
+    private fun buildOktaUserIdCache() = oktaUserIdCacheSize.takeIf { it > 0 }?.let {
+        CacheBuilder.newBuilder().maximumSize(it).build<String, String>()
+    }
 
     fun findByOktaUserId(id: String?) = findOktaUserByOktaUserId(id)?.asIdmUser()
-    private fun findOktaUserByOktaUserId(id: String?) = id?.let { okta.getUser(id) }
+    private fun findOktaUserByOktaUserId(id: String?) = id?.let { schedule(USERS) { okta.getUser(id) } }
+        ?.also { user -> user.profile.getString(PROFILE_THEKEY_GUID)?.let { oktaUserIds?.put(it, user.id) } }
 
     override fun findByEmail(email: String?, includeDeactivated: Boolean) = when {
         email == null -> null
         includeDeactivated ->
-            okta.searchUsers("""profile.$PROFILE_EMAIL eq "$email" or profile.$PROFILE_ORIGINAL_EMAIL eq "$email"""")
-        else -> okta.searchUsers("""profile.$PROFILE_EMAIL eq "$email"""")
+            search("""profile.$PROFILE_EMAIL eq "$email" or profile.$PROFILE_ORIGINAL_EMAIL eq "$email"""")
+        else -> search("""profile.$PROFILE_EMAIL eq "$email"""")
     }?.firstOrNull()?.asIdmUser()
 
     override fun findByTheKeyGuid(guid: String?, includeDeactivated: Boolean) =
         findOktaUserByTheKeyGuid(guid)?.asIdmUser()?.takeIf { !it.isDeactivated || includeDeactivated }
     private fun findOktaUserByTheKeyGuid(guid: String?) =
-        guid?.let { okta.searchUsers("profile.$PROFILE_THEKEY_GUID eq \"$guid\"").firstOrNull() }
+        guid?.let { search("profile.$PROFILE_THEKEY_GUID eq \"$guid\"").firstOrNull() }
+            ?.also { oktaUserIds?.put(guid, it.id) }
 
     override fun findByRelayGuid(guid: String?, includeDeactivated: Boolean) =
-        guid?.let { okta.searchUsers("profile.$PROFILE_RELAY_GUID eq \"$guid\"").firstOrNull()?.asIdmUser() }
+        guid?.let { search("profile.$PROFILE_RELAY_GUID eq \"$guid\"").firstOrNull()?.asIdmUser() }
             ?.takeIf { !it.isDeactivated || includeDeactivated }
 
+    override fun findAllByTheKeyGuids(guids: Collection<String?>, includeDeactivated: Boolean) =
+        findAllByBatch(guids, includeDeactivated, { "profile.$PROFILE_THEKEY_GUID eq \"$it\"" }) { it.theKeyGuid }
+
+    override fun findAllByEmails(emails: Collection<String?>, includeDeactivated: Boolean) =
+        findAllByBatch(emails, includeDeactivated, {
+            when {
+                includeDeactivated ->
+                    "(profile.$PROFILE_EMAIL eq \"$it\" or profile.$PROFILE_ORIGINAL_EMAIL eq \"$it\")"
+                else -> "profile.$PROFILE_EMAIL eq \"$it\""
+            }
+        }) { it.email }
+
+    private fun findAllByBatch(
+        values: Collection<String?>,
+        includeDeactivated: Boolean,
+        expression: (String) -> String,
+        key: (User) -> String?
+    ): Map<String, User> {
+        // index requested values by their normalized form, Okta search is case-insensitive
+        val requested = values.filterNotNull().distinct().groupBy { it.toLowerCase(Locale.US) }
+        val users = mutableMapOf<String, User>()
+
+        requested.keys.chunked(maxBatchLookupSize).forEach { chunk ->
+            // batch loaded users may be cached for single lookups, so groups are loaded the same way as for those.
+            // the memberships are read from the group membership cache when it is enabled.
+            val loaded = search(chunk.joinToString(" or ", transform = expression))
+                .map { it.asIdmUser(notifyListeners = false) }
+                .filter { !it.isDeactivated || includeDeactivated }
+                .toList()
+                .also { notifyUsersLoaded(it) }
+            loaded.forEach { user ->
+                // prefer active users when a value matches multiple users
+                key(user)?.let { requested[it.toLowerCase(Locale.US)] }?.forEach { value ->
+                    users.merge(value, user) { existing, found ->
+                        if (existing.isDeactivated && !found.isDeactivated) found else existing
+                    }
+                }
+            }
+        }
+        return users
+    }
+
+    override fun findExistingIdentifiers(identifiers: Map<UniqueIdentifier, String?>): Set<UniqueIdentifier> {
+        val existing = EnumSet.noneOf(UniqueIdentifier::class.java)
+        val search = identifiers.mapNotNull { (type, value) -> value?.let { type.toOktaExpression(it) } }
+            .takeIf { it.isNotEmpty() }?.joinToString(" or ") ?: return existing
+
+        search(search).forEach { oktaUser ->
+            identifiers.forEach { (type, value) ->
+                if (value != null && oktaUser.matches(type, value)) existing.add(type)
+            }
+        }
+        return existing
+    }
+
+    private fun UniqueIdentifier.toOktaExpression(value: String) = when (this) {
+        UniqueIdentifier.EMAIL -> "profile.$PROFILE_EMAIL eq \"$value\""
+        UniqueIdentifier.RELAY_GUID -> "profile.$PROFILE_RELAY_GUID eq \"$value\""
+        UniqueIdentifier.THEKEY_GUID -> "profile.$PROFILE_THEKEY_GUID eq \"$value\""
+        // legacy guids are not tracked in Okta
+        UniqueIdentifier.GUID -> null
+    }
+
+    private fun com.okta.sdk.resource.user.User.matches(type: UniqueIdentifier, value: String) = when (type) {
+        UniqueIdentifier.EMAIL -> profile.email.equals(value, ignoreCase = true)
+        UniqueIdentifier.RELAY_GUID -> profile.getString(PROFILE_RELAY_GUID).equals(value, ignoreCase = true)
+        UniqueIdentifier.THEKEY_GUID -> profile.getString(PROFILE_THEKEY_GUID).equals(value, ignoreCase = true)
+        UniqueIdentifier.GUID -> false
+    }
+
     // region Stream Users
     override fun streamUsers(
         expression: Expression?,
         includeDeactivated: Boolean,
         restrictMaxAllowed: Boolean
     ): Stream<User> {
-        val search = expression?.toOktaExpression(includeDeactivated)
-        return okta.listUsers(null, null, null, search, null).stream()
-            .map { it.asIdmUser(loadGroups = false) }
+        val normalized = ExpressionNormalizer.normalize(expression, SINGLE_VALUED_ATTRIBUTES)
+        if (normalized == ConstantExpression.FALSE) return Stream.empty()
+        val search = normalized?.takeUnless { it == ConstantExpression.TRUE }?.toOktaExpression(includeDeactivated)
+        if (streamLoadGroups) bulkLoadGroupMemberships()
+        val family = if (search != null) SEARCH else USERS
+        return schedule(family) { okta.listUsers(null, null, null, search, null) }
+            .prefetchingStream(family, USERS_PAGE_SIZE)
+            .map { it.asIdmUser(loadGroups = streamLoadGroups, notifyListeners = false) }
             .filter { !it.isDeactivated || includeDeactivated }
+            .notifyUsersLoaded()
             .restrictMaxAllowed(restrictMaxAllowed)
     }
 
@@ -107,15 +375,100 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
         restrictMaxAllowed: Boolean
     ): Stream<User> {
         require(group is OktaGroup) { "OktaGroup is required for streamUsersInGroup" }
-        val oktaGroup = group.id?.let { okta.getGroup(it) } ?: throw GroupNotFoundException()
+        val oktaGroup = group.id?.let { schedule(GROUPS) { okta.getGroup(it) } } ?: throw GroupNotFoundException()
+        val normalized = ExpressionNormalizer.normalize(expression, SINGLE_VALUED_ATTRIBUTES)
+        if (normalized == ConstantExpression.FALSE) return Stream.empty()
 
-        return oktaGroup.listUsers().stream()
-            .map { it.asIdmUser(loadGroups = false) }
+        if (groupSearchPushDown && normalized != null && normalized.isOktaSearchable()) {
+            searchGroupMembers(oktaGroup.id, normalized, includeDeactivated)
+                ?.let { return it.stream().restrictMaxAllowed(restrictMaxAllowed) }
+        }
+
+        val predicate = normalized?.compile()
+        if (streamLoadGroups) bulkLoadGroupMemberships()
+        return schedule(GROUPS) { oktaGroup.listUsers() }.prefetchingStream(GROUPS, GROUP_MEMBERS_PAGE_SIZE)
+            .map { it.asIdmUser(loadGroups = streamLoadGroups, notifyListeners = false) }
             .filter { !it.isDeactivated || includeDeactivated }
-            .filter { expression?.matches(it) != false }
+            .filter { predicate?.test(it) != false }
+            .notifyUsersLoaded()
             .restrictMaxAllowed(restrictMaxAllowed)
     }
 
+    /**
+     * Search Okta for users matching the expression and check the group membership of each candidate, using the
+     * cached memberships when available. This returns null when there are more than [groupSearchCandidateLimit]
+     * candidates, in which case it is cheaper to list the members of the group instead.
+     */
+    private fun searchGroupMembers(groupId: String, expression: Expression, includeDeactivated: Boolean): List<User>? {
+        val candidates = search(expression.toOktaExpression(includeDeactivated))
+            .take(groupSearchCandidateLimit + 1).toList()
+        if (candidates.size > groupSearchCandidateLimit) return null
+        if (streamLoadGroups) bulkLoadGroupMemberships()
+
+        return candidates
+            .map { it to it.loadIdmGroups() }
+            .filter { (_, groups) -> groups.any { it.id == groupId } }
+            .map { (candidate, groups) ->
+                // reuse the memberships loaded above instead of loading them again
+                candidate.asIdmUser(loadGroups = false, notifyListeners = false)
+                    .apply { if (streamLoadGroups) setGroups(groups) }
+            }
+            .filter { !it.isDeactivated || includeDeactivated }
+            .also { notifyUsersLoaded(it) }
+    }
+
+    private fun UserList.prefetchingStream(
+        family: OktaRequestScheduler.Family,
+        pageSize: Int
+    ): Stream<com.okta.sdk.resource.user.User> {
+        if (listPrefetchSize <= 0 && requestScheduler == null) return stream()
+
+        val source = pagedIterator(family, pageSize)
+        if (listPrefetchSize <= 0) {
+            return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(source, Spliterator.ORDERED or Spliterator.NONNULL), false
+            )
+        }
+
+        val iterator = PrefetchingIterator(source, listPrefetchSize, prefetchExecutor)
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED or Spliterator.NONNULL), false
+        ).onClose(iterator::close)
+    }
+
+    /**
+     * Iterate a paged Okta collection, sending the requests for subsequent pages through the request scheduler too.
+     */
+    private fun <T> Iterable<T>.pagedIterator(family: OktaRequestScheduler.Family, pageSize: Int) =
+        requestScheduler?.pagedIterator(family, pageSize, iterator()) ?: iterator()
+    private fun <T> Iterable<T>.pagedSequence(family: OktaRequestScheduler.Family, pageSize: Int) =
+        pagedIterator(family, pageSize).asSequence()
+
+    private fun search(search: String) =
+        schedule(SEARCH) { okta.searchUsers(search) }.pagedSequence(SEARCH, USERS_PAGE_SIZE)
+
+    private fun <T> schedule(family: OktaRequestScheduler.Family, request: () -> T): T {
+        val scheduler = requestScheduler ?: return request()
+        return scheduler.execute(family, request)
+    }
+
+    private fun notifyUsersLoaded(users: List<User>) {
+        if (users.isNotEmpty()) listeners?.forEach { it.onUsersLoaded(users) }
+    }
+
+    /**
+     * Notify the listeners of the users in this stream in pages of [listenerBatchSize] users.
+     */
+    private fun Stream<User>.notifyUsersLoaded(): Stream<User> {
+        if (listeners.isNullOrEmpty()) return this
+
+        val pages = Iterators.partition(iterator(), listenerBatchSize)
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED), false)
+            .peek { notifyUsersLoaded(it) }
+            .flatMap { it.stream() }
+            .onClose(this::close)
+    }
+
     private fun <T> Stream<T>.restrictMaxAllowed(restrict: Boolean = true) =
         if (restrict && maxSearchResults != SEARCH_NO_LIMIT) {
             val count = AtomicInteger(0)
@@ -159,8 +512,13 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
             .putProfileProperty(PROFILE_MANAGER_ID, user.cruManagerID)
 
         try {
-            builder.buildAndCreate(okta)
-                .also { user.oktaUserId = it.id }
+            schedule(USERS) { builder.buildAndCreate(okta) }
+                .also {
+                    user.oktaUserId = it.id
+                    user.theKeyGuid?.let { guid -> oktaUserIds?.put(guid, it.id) }
+                    // the new user is missing from any live membership snapshot, but may be a member of initialGroups
+                    invalidateGroupMemberships(it.id)
+                }
         } catch (e: ResourceException) {
             throw e.asIdmException(checkPasswordException = true)
         }
@@ -181,70 +539,45 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
             attrsSet.contains(User.Attr.EMPLOYEE_NUMBER) || attrsSet.contains(User.Attr.CRU_DESIGNATION) ||
             attrsSet.contains(User.Attr.HUMAN_RESOURCE) || attrsSet.contains(User.Attr.CRU_PROXY_ADDRESSES)
         ) {
-            val oktaUser = findOktaUser(user) ?: throw UserNotFoundException()
-
-            var changed = false
+            val profile = mutableMapOf<String, Any?>()
             attrsSet.forEach {
                 when (it) {
                     User.Attr.EMAIL -> {
-                        if (user.isDeactivated) {
-                            oktaUser.profile.email = "$DEACTIVATED_PREFIX${user.theKeyGuid}$DEACTIVATED_SUFFIX"
-                            oktaUser.profile[PROFILE_ORIGINAL_EMAIL] = user.email
+                        val email = if (user.isDeactivated) {
+                            profile[PROFILE_ORIGINAL_EMAIL] = user.email
+                            "$DEACTIVATED_PREFIX${user.theKeyGuid}$DEACTIVATED_SUFFIX"
                         } else {
-                            oktaUser.profile.email = user.email
-                            oktaUser.profile[PROFILE_ORIGINAL_EMAIL] = null
+                            profile[PROFILE_ORIGINAL_EMAIL] = null
+                            user.email
                         }
-                        oktaUser.profile.login = oktaUser.profile.email
-                        changed = true
-                    }
-                    User.Attr.PASSWORD -> {
-                        oktaUser.credentials.password.value = user.password.toCharArray()
-                        changed = true
+                        profile[PROFILE_EMAIL] = email
+                        profile[PROFILE_LOGIN] = email
                     }
                     User.Attr.NAME -> {
-                        oktaUser.profile.firstName = user.firstName
-                        oktaUser.profile[PROFILE_NICK_NAME] = user.rawPreferredName
-                        oktaUser.profile.lastName = user.lastName
-                        changed = true
-                    }
-                    User.Attr.CRU_PREFERRED_NAME -> {
-                        oktaUser.profile[PROFILE_NICK_NAME] = user.rawPreferredName
-                        changed = true
-                    }
-                    User.Attr.CONTACT -> {
-                        oktaUser.profile[PROFILE_PHONE_NUMBER] = user.telephoneNumber
-                        changed = true
+                        profile[PROFILE_FIRST_NAME] = user.firstName
+                        profile[PROFILE_NICK_NAME] = user.rawPreferredName
+                        profile[PROFILE_LAST_NAME] = user.lastName
                     }
+                    User.Attr.CRU_PREFERRED_NAME -> profile[PROFILE_NICK_NAME] = user.rawPreferredName
+                    User.Attr.CONTACT -> profile[PROFILE_PHONE_NUMBER] = user.telephoneNumber
                     User.Attr.LOCATION -> {
-                        oktaUser.profile[PROFILE_CITY] = user.city
-                        oktaUser.profile[PROFILE_STATE] = user.state
-                        oktaUser.profile[PROFILE_ZIP_CODE] = user.postal
-                        oktaUser.profile[PROFILE_COUNTRY] = user.country
-                        changed = true
-                    }
-                    User.Attr.EMPLOYEE_NUMBER -> {
-                        oktaUser.profile[PROFILE_US_EMPLOYEE_ID] = user.employeeId
-                        changed = true
-                    }
-                    User.Attr.CRU_DESIGNATION -> {
-                        oktaUser.profile[PROFILE_US_DESIGNATION] = user.cruDesignation
-                        changed = true
+                        profile[PROFILE_CITY] = user.city
+                        profile[PROFILE_STATE] = user.state
+                        profile[PROFILE_ZIP_CODE] = user.postal
+                        profile[PROFILE_COUNTRY] = user.country
                     }
+                    User.Attr.EMPLOYEE_NUMBER -> profile[PROFILE_US_EMPLOYEE_ID] = user.employeeId
+                    User.Attr.CRU_DESIGNATION -> profile[PROFILE_US_DESIGNATION] = user.cruDesignation
                     User.Attr.HUMAN_RESOURCE -> {
-                        oktaUser.profile[PROFILE_ORGANIZATION] = user.cruMinistryCode
-                        oktaUser.profile[PROFILE_DIVISION] = user.cruSubMinistryCode
-                        oktaUser.profile[PROFILE_DEPARTMENT] = user.departmentNumber
-                        oktaUser.profile[PROFILE_MANAGER_ID] = user.cruManagerID
-                        changed = true
-                    }
-                    User.Attr.CRU_PROXY_ADDRESSES -> {
-                        oktaUser.profile[PROFILE_EMAIL_ALIASES] = user.cruProxyAddresses.toList()
-                        changed = true
-                    }
-                    User.Attr.ORCA -> {
-                        oktaUser.profile[PROFILE_ORCA] = user.isOrca
-                        changed = true
+                        profile[PROFILE_ORGANIZATION] = user.cruMinistryCode
+                        profile[PROFILE_DIVISION] = user.cruSubMinistryCode
+                        profile[PROFILE_DEPARTMENT] = user.departmentNumber
+                        profile[PROFILE_MANAGER_ID] = user.cruManagerID
                     }
+                    User.Attr.CRU_PROXY_ADDRESSES -> profile[PROFILE_EMAIL_ALIASES] = user.cruProxyAddresses.toList()
+                    User.Attr.ORCA -> profile[PROFILE_ORCA] = user.isOrca
+                    // the password is part of the credentials and not the profile
+                    User.Attr.PASSWORD -> Unit
                     // these attributes are still tracked in LDAP but not in Okta
                     User.Attr.FLAGS,
                     User.Attr.SECURITYQA,
@@ -259,22 +592,40 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
                 }
             }
 
-            if (changed) {
-                try {
-                    oktaUser.update()
-                } catch (e: ResourceException) {
-                    throw e.asIdmException(checkPasswordException = attrsSet.contains(User.Attr.PASSWORD))
+            val updatePassword = attrsSet.contains(User.Attr.PASSWORD)
+            try {
+                when {
+                    !updatePassword && profile.isEmpty() -> Unit
+                    partialProfileUpdates && !updatePassword -> updateProfile(user, profile)
+                    else -> {
+                        val oktaUser = findOktaUser(user) ?: throw UserNotFoundException()
+                        profile.forEach { (key, value) -> oktaUser.profile[key] = value }
+                        if (updatePassword) oktaUser.credentials.password.value = user.password.toCharArray()
+                        schedule(USERS) { oktaUser.update() }
+                    }
                 }
+            } catch (e: ResourceException) {
+                throw e.asIdmException(checkPasswordException = updatePassword)
             }
         }
 
         listeners?.onEach { it.onUserUpdated(user, *attrsSet.toTypedArray()) }
     }
 
+    /**
+     * Send only the changed profile attributes to Okta, Okta merges a posted profile with the existing profile.
+     */
+    private fun updateProfile(user: User, changes: Map<String, Any?>) {
+        val partial = okta.instantiate(com.okta.sdk.resource.user.User::class.java).apply {
+            profile = okta.instantiate(UserProfile::class.java).apply { putAll(changes) }
+        }
+        withOktaUserId(user) { oktaUserId -> schedule(USERS) { okta.save("/api/v1/users/$oktaUserId", partial) } }
+    }
+
     override fun reactivate(user: User) {
         val oktaUser = findOktaUser(user) ?: return
         super.reactivate(user)
-        if (oktaUser.status == UserStatus.SUSPENDED) oktaUser.unsuspend()
+        if (oktaUser.status == UserStatus.SUSPENDED) schedule(USERS) { oktaUser.unsuspend() }
     }
 
     override fun deactivate(user: User) {
@@ -285,40 +636,137 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
             UserStatus.SUSPENDED -> Unit
             // account was created but hasn't been verified yet, Okta doesn't support suspending these accounts
             UserStatus.STAGED, UserStatus.PROVISIONED -> Unit
-            else -> oktaUser.suspend()
+            else -> schedule(USERS) { oktaUser.suspend() }
         }
 
         // update account to indicate it is deactivated
         super.deactivate(user)
 
         // de-provision accounts that we couldn't suspend and that were never actually activated
-        if (oktaUser.status == UserStatus.STAGED || oktaUser.status == UserStatus.PROVISIONED) oktaUser.deactivate()
+        if (oktaUser.status == UserStatus.STAGED || oktaUser.status == UserStatus.PROVISIONED) {
+            schedule(USERS) { oktaUser.deactivate() }
+        }
     }
     // endregion CRUD methods
 
     // region Group methods
-    override fun getGroup(groupId: String?) = groupId?.let { okta.getGroup(groupId) }?.asIdmGroup()
+    override fun getGroup(groupId: String?) = groupCatalogue?.getGroup(groupId)
+        ?: groupId?.let { schedule(GROUPS) { okta.getGroup(groupId) } }?.asIdmGroup()
 
-    override fun getAllGroups(baseSearch: String?) = okta.listGroups(baseSearch, null, null).asSequence()
-        .map { it.asIdmGroup() }
-        .filter { baseSearch == null || it.isDescendantOfOrEqualTo(baseSearch) }
-        .toList()
+    override fun getAllGroups(baseSearch: String?) = groupCatalogue?.getGroups(baseSearch)
+        ?: schedule(GROUPS) { okta.listGroups(baseSearch, null, null) }
+            .pagedSequence(GROUPS, GROUPS_PAGE_SIZE)
+            .map { it.asIdmGroup() }
+            .filter { baseSearch == null || it.isDescendantOfOrEqualTo(baseSearch) }
+            .toList()
 
     override fun addToGroup(user: User, group: Group) {
         require(group is OktaGroup) { "$group is not an Okta Group" }
 
         val oktaUser = findOktaUser(user) ?: throw UserNotFoundException()
-        oktaUser.addToGroup(group.id)
+        schedule(GROUPS) { oktaUser.addToGroup(group.id) }
+        invalidateGroupMemberships(oktaUser.id)
     }
 
     override fun removeFromGroup(user: User, group: Group) {
         require(group is OktaGroup) { "$group is not an Okta Group" }
 
-        val oktaUserId = user.oktaUserId ?: findOktaUser(user)?.id ?: throw UserNotFoundException()
-        okta.getGroup(group.id)?.removeUser(oktaUserId)
+        // groups known to the catalogue don't need to be fetched before removing the user
+        val oktaGroup = groupCatalogue?.getGroup(group.id)
+            ?.let { okta.instantiate(com.okta.sdk.resource.group.Group::class.java, mapOf("id" to it.id)) }
+            ?: schedule(GROUPS) { okta.getGroup(group.id) }
+            ?: return
+        val oktaUserId = withOktaUserId(user) { oktaUserId ->
+            schedule(GROUPS) { oktaGroup.removeUser(oktaUserId) }
+            oktaUserId
+        }
+        invalidateGroupMemberships(oktaUserId)
+    }
+
+    private fun buildGroupMembershipCache() = groupMembershipCacheTtl.takeIf { it > 0 }?.let {
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(it, TimeUnit.SECONDS)
+            .maximumSize(groupMembershipCacheSize)
+            .build<String, List<Group>>()
+    }
+
+    private fun com.okta.sdk.resource.user.User.loadIdmGroups(): List<Group> {
+        cachedIdmGroups(id)?.let { return it }
+        val cache = groupMemberships ?: return schedule(USERS) { listGroups() }.map { it.asIdmGroup() }
+        return cache.get(id) { schedule(USERS) { listGroups() }.map { it.asIdmGroup() } }
+    }
+
+    /**
+     * Return the group memberships of a user from the group membership cache or the bulk loaded snapshot, without
+     * sending any requests to Okta. This returns null when the memberships of the user aren't known.
+     */
+    private fun cachedIdmGroups(oktaUserId: String): List<Group>? {
+        val cache = groupMemberships ?: return null
+        cache.getIfPresent(oktaUserId)?.let { return it }
+
+        val snapshot = groupMembershipSnapshot ?: return null
+        if (System.currentTimeMillis() - snapshot.startedAt >= TimeUnit.SECONDS.toMillis(groupMembershipCacheTtl)) {
+            return null
+        }
+        val invalidated = groupMembershipInvalidations[oktaUserId]
+        if (invalidated != null && invalidated > snapshot.generation) return null
+        // the snapshot contains every group, so users missing from it aren't a member of any group
+        return snapshot.memberships[oktaUserId].orEmpty()
+    }
+
+    private fun invalidateGroupMemberships(oktaUserId: String) {
+        groupMembershipInvalidations[oktaUserId] = groupMembershipGeneration.incrementAndGet()
+        groupMemberships?.invalidate(oktaUserId)
     }
+
+    /**
+     * Bulk load the group memberships of all users from the member lists of all groups in the background, this is
+     * only done once per cache TTL. Until the snapshot is available memberships are loaded individually.
+     */
+    private fun bulkLoadGroupMemberships() {
+        if (groupMemberships == null) return
+        val now = System.currentTimeMillis()
+        val last = groupMembershipsBulkLoaded.get()
+        if (now - last < TimeUnit.SECONDS.toMillis(groupMembershipCacheTtl)) return
+        if (!groupMembershipsBulkLoaded.compareAndSet(last, now)) return
+
+        (groupMembershipLoadExecutor ?: prefetchExecutor).execute {
+            try {
+                val generation = groupMembershipGeneration.get()
+                val memberships = mutableMapOf<String, MutableList<Group>>()
+                schedule(GROUPS) { okta.listGroups(null, null, null) }.pagedIterator(GROUPS, GROUPS_PAGE_SIZE)
+                    .forEach { oktaGroup ->
+                        val group = oktaGroup.asIdmGroup()
+                        schedule(GROUPS) { oktaGroup.listUsers() }.pagedIterator(GROUPS, GROUP_MEMBERS_PAGE_SIZE)
+                            .forEach { memberships.getOrPut(it.id) { mutableListOf() }.add(group) }
+                    }
+                groupMembershipSnapshot = GroupMembershipSnapshot(memberships, generation, now)
+                groupMembershipInvalidations.values.removeIf { it <= generation }
+            } catch (e: Exception) {
+                LOG.warn("Unable to bulk load the Okta group memberships", e)
+            }
+        }
+    }
+
+    private class GroupMembershipSnapshot(
+        val memberships: Map<String, List<Group>>,
+        val generation: Long,
+        val startedAt: Long
+    )
     // endregion Group methods
 
+    /**
+     * Stop the group catalogue refresh and the background threads used for prefetching users & bulk loading group
+     * memberships.
+     */
+    @Synchronized
+    override fun close() {
+        closed = true
+        catalogue?.close()
+        catalogue = null
+        if (prefetchExecutorDelegate.isInitialized()) prefetchExecutor.shutdownNow()
+    }
+
     // region Unsupported Deprecated Methods
     override fun enqueueAll(queue: BlockingQueue<User>, deactivated: Boolean) = throw UnsupportedOperationException()
     override fun findAllByGroup(group: Group, includeDeactivated: Boolean) = throw UnsupportedOperationException()
@@ -339,7 +787,10 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
         else -> OktaDaoException(this)
     }
 
-    private fun com.okta.sdk.resource.user.User.asIdmUser(loadGroups: Boolean = this@OktaUserDao.loadGroups): User {
+    private fun com.okta.sdk.resource.user.User.asIdmUser(
+        loadGroups: Boolean = this@OktaUserDao.loadGroups,
+        notifyListeners: Boolean = true
+    ): User {
         return User().apply {
             oktaUserId = id
             theKeyGuid = profile.getString(PROFILE_THEKEY_GUID)
@@ -381,8 +832,8 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
 
             loginTime = lastLogin?.let { Instant(it.time) }
 
-            if (loadGroups) setGroups(listGroups().map { it.asIdmGroup() })
-        }.also { user -> listeners?.onEach { it.onUserLoaded(user) } }
+            if (loadGroups) setGroups(loadIdmGroups())
+        }.also { user -> if (notifyListeners) listeners?.onEach { it.onUserLoaded(user) } }
     }
 
     private fun com.okta.sdk.resource.group.Group.asIdmGroup() =
@@ -390,6 +841,11 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
 
     interface Listener {
         fun onUserLoaded(user: User) = Unit
+
+        /**
+         * Called with a page of users loaded together, listeners can override this to process the users in bulk.
+         */
+        fun onUsersLoaded(users: List<User>) = users.forEach { onUserLoaded(it) }
         fun onUserCreated(user: User) = Unit
         fun onUserUpdated(user: User, vararg attrs: User.Attr) = Unit
     }
@@ -407,6 +863,12 @@ private fun BooleanExpression.toOktaExpression(includeDeactivated: Boolean) = wh
     BooleanExpression.Type.OR -> "(${components.joinToString(" or ") { it.toOktaExpression(includeDeactivated) }})"
 }
 
+private fun Expression.isOktaSearchable(): Boolean = when (this) {
+    is BooleanExpression -> components.all { it.isOktaSearchable() }
+    is ComparisonExpression -> attribute != Attribute.GROUP && type != ComparisonExpression.Type.LIKE
+    else -> false
+}
+
 private fun ComparisonExpression.toOktaExpression(includeDeactivated: Boolean): String = when {
     attribute == Attribute.GROUP -> TODO("Group search not implemented yet")
     includeDeactivated && attribute == Attribute.EMAIL ->
@@ -16,30 +16,37 @@ class FallbackDaoOktaUserDaoListener(
     private val dao: UserDao
 ) : OktaUserDao.Listener {
     override fun onUserLoaded(user: User) {
-        dao.findByTheKeyGuid(user.theKeyGuid, true)?.run {
-            // MFA attributes
-            user.isMfaBypassed = isMfaBypassed
-            user.mfaEncryptedSecret = mfaEncryptedSecret
-            user.isMfaIntruderLocked = isMfaIntruderLocked
-            user.mfaIntruderAttempts = mfaIntruderAttempts
-            user.mfaIntruderResetTime = mfaIntruderResetTime
-
-            // self-service keys
-            user.signupKey = signupKey
-            user.proposedEmail = proposedEmail
-            user.changeEmailKey = changeEmailKey
-            user.resetPasswordKey = resetPasswordKey
-
-            // SQ & SA
-            user.securityQuestion = securityQuestion
-            user.setSecurityAnswer(securityAnswer, false)
-
-            // Login Time (fallback if there isn't already a last login time)
-            user.loginTime = user.loginTime ?: loginTime
-
-            // HR attributes not stored in Okta but still needed
-            user.cruEmployeeStatus = cruEmployeeStatus
-        }
+        dao.findByTheKeyGuid(user.theKeyGuid, true)?.let { user.mergeFallbackAttributes(it) }
+    }
+
+    override fun onUsersLoaded(users: List<User>) {
+        val fallbacks = dao.findAllByTheKeyGuids(users.mapNotNull { it.theKeyGuid }, true)
+        users.forEach { user -> user.theKeyGuid?.let { fallbacks[it] }?.let { user.mergeFallbackAttributes(it) } }
+    }
+
+    private fun User.mergeFallbackAttributes(fallback: User) {
+        // MFA attributes
+        isMfaBypassed = fallback.isMfaBypassed
+        mfaEncryptedSecret = fallback.mfaEncryptedSecret
+        isMfaIntruderLocked = fallback.isMfaIntruderLocked
+        mfaIntruderAttempts = fallback.mfaIntruderAttempts
+        mfaIntruderResetTime = fallback.mfaIntruderResetTime
+
+        // self-service keys
+        signupKey = fallback.signupKey
+        proposedEmail = fallback.proposedEmail
+        changeEmailKey = fallback.changeEmailKey
+        resetPasswordKey = fallback.resetPasswordKey
+
+        // SQ & SA
+        securityQuestion = fallback.securityQuestion
+        setSecurityAnswer(fallback.securityAnswer, false)
+
+        // Login Time (fallback if there isn't already a last login time)
+        loginTime = loginTime ?: fallback.loginTime
+
+        // HR attributes not stored in Okta but still needed
+        cruEmployeeStatus = fallback.cruEmployeeStatus
     }
 
     override fun onUserCreated(user: User) {
@@ -1,21 +1,127 @@
 package org.ccci.idm.user.okta.dao.listeners
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder
 import com.okta.authn.sdk.client.AuthenticationClient
 import org.ccci.idm.user.User
 import org.ccci.idm.user.okta.dao.OktaUserDao
-import java.lang.Thread.sleep
+import org.slf4j.LoggerFactory
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 
-class OktaPasswordHackForCreateUserListener(
+private val LOG = LoggerFactory.getLogger(OktaPasswordHackForCreateUserListener::class.java)
+
+/**
+ * Authenticates newly created users after a delay on a dedicated scheduler so the password is pushed to the
+ * provisioned LDAP account, without holding the thread that created the user. The captured password is cleared once
+ * the user was authenticated or all attempts failed.
+ */
+class OktaPasswordHackForCreateUserListener @JvmOverloads constructor(
     private val authClient: AuthenticationClient,
-    private val sleep: Long = 3000
-) : OktaUserDao.Listener {
+    private val sleep: Long = 3000,
+    executor: ScheduledExecutorService? = null
+) : OktaUserDao.Listener, AutoCloseable {
+    // an executor passed in is owned by the caller, only the default executor is shut down on close
+    private val ownsExecutor = executor == null
+    private val executor = executor ?: defaultExecutor()
+
+    /**
+     * The maximum number of authentications waiting to run, once reached new users are authenticated on the
+     * calling thread after the delay.
+     */
+    var maxPending = 1000
+
+    /**
+     * The number of attempts made to authenticate a user, retries are delayed by [sleep] doubled for every attempt.
+     */
+    var maxAttempts = 3
+
+    private val pending = AtomicInteger(0)
+    private val scheduled = AtomicLong(0)
+    private val inline = AtomicLong(0)
+    private val succeeded = AtomicLong(0)
+    private val retried = AtomicLong(0)
+    private val failed = AtomicLong(0)
+
+    val pendingCount get() = pending.get()
+    val scheduledCount get() = scheduled.get()
+    val inlineCount get() = inline.get()
+    val succeededCount get() = succeeded.get()
+    val retriedCount get() = retried.get()
+    val failedCount get() = failed.get()
+
     override fun onUserCreated(user: User) {
         // HACK: When a new Okta user is created it will trigger provisioning of the account to eDirectory.
         //       Unfortunately it generates a new random password for the LDAP account and actually provisions the
         //       password on the next login.
         //       In addition, if we authenticate the user before the LDAP provisioning completes the password isn't
-        //       pushed to the provisioned account, this is the reason for the sleep.
-        sleep(sleep)
-        authClient.authenticate(user.email, user.password.toCharArray(), null, null)
+        //       pushed to the provisioned account, this is the reason for the delay.
+        // capture the credentials now, the user object may be modified by the caller after creation
+        val email = user.email
+        val password = user.password.toCharArray()
+
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet()
+            inline.incrementAndGet()
+            try {
+                Thread.sleep(sleep)
+                authClient.authenticate(email, password, null, null)
+                succeeded.incrementAndGet()
+            } catch (e: Exception) {
+                failed.incrementAndGet()
+                throw e
+            } finally {
+                password.fill('\u0000')
+            }
+            return
+        }
+
+        scheduled.incrementAndGet()
+        schedule(email, password, 1, sleep)
+    }
+
+    private fun schedule(email: String, password: CharArray, attempt: Int, delay: Long) {
+        try {
+            executor.schedule(Runnable { authenticate(email, password, attempt) }, delay, TimeUnit.MILLISECONDS)
+        } catch (e: RejectedExecutionException) {
+            LOG.error("Unable to schedule authentication attempt {} of newly created user {}", attempt, email, e)
+            complete(password, failed)
+        }
+    }
+
+    private fun authenticate(email: String, password: CharArray, attempt: Int) {
+        try {
+            authClient.authenticate(email, password, null, null)
+        } catch (e: Exception) {
+            if (attempt < maxAttempts) {
+                retried.incrementAndGet()
+                schedule(email, password, attempt + 1, sleep shl attempt)
+                return
+            }
+
+            LOG.error("Unable to authenticate newly created user {} after {} attempts", email, attempt, e)
+            complete(password, failed)
+            return
+        }
+        complete(password, succeeded)
+    }
+
+    private fun complete(password: CharArray, outcome: AtomicLong) {
+        password.fill('\u0000')
+        outcome.incrementAndGet()
+        pending.decrementAndGet()
+    }
+
+    override fun close() {
+        if (ownsExecutor) executor.shutdown()
+    }
+
+    private companion object {
+        fun defaultExecutor() = ScheduledThreadPoolExecutor(
+            2, ThreadFactoryBuilder().setDaemon(true).setNameFormat("okta-password-hack-%d").build()
+        )
     }
 }
@@ -0,0 +1,85 @@
+package org.ccci.idm.user.okta.dao.util
+
+import org.ccci.idm.user.dao.exception.InterruptedDaoException
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+private val END = Any()
+
+/**
+ * An iterator that drains the source iterator on a background thread into a bounded buffer. This allows the next
+ * page of a paged Okta collection to be requested while the current page is still being processed by the consumer.
+ *
+ * The iterator needs to be closed if it isn't fully consumed, closing it stops the background producer.
+ */
+internal class PrefetchingIterator<T : Any>(
+    private val source: Iterator<T>,
+    bufferSize: Int,
+    private val executor: ExecutorService
+) : Iterator<T>, AutoCloseable {
+    private class Failure(val cause: Throwable)
+
+    private val buffer = ArrayBlockingQueue<Any>(bufferSize)
+    @Volatile
+    private var closed = false
+    private var producer: Future<*>? = null
+    private var next: Any? = null
+
+    override fun hasNext(): Boolean {
+        if (next == null) next = take()
+        return when (val item = next) {
+            END -> false
+            is Failure -> {
+                next = END
+                throw item.cause
+            }
+            else -> true
+        }
+    }
+
+    override fun next(): T {
+        if (!hasNext()) throw NoSuchElementException()
+        @Suppress("UNCHECKED_CAST")
+        return (next as T).also { next = null }
+    }
+
+    override fun close() {
+        closed = true
+        producer?.cancel(true)
+        buffer.clear()
+    }
+
+    private fun take(): Any {
+        if (closed) return END
+        if (producer == null) producer = executor.submit(::produce)
+
+        try {
+            return buffer.take()
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw InterruptedDaoException(e)
+        }
+    }
+
+    private fun produce() {
+        try {
+            while (!closed && source.hasNext()) {
+                put(source.next())
+            }
+            put(END)
+        } catch (e: InterruptedException) {
+            // the consumer closed this iterator
+        } catch (e: Throwable) {
+            put(Failure(e))
+        }
+    }
+
+    private fun put(item: Any) {
+        // periodically check if the consumer went away while the buffer is full
+        while (!closed) {
+            if (buffer.offer(item, 100, TimeUnit.MILLISECONDS)) return
+        }
+    }
+}
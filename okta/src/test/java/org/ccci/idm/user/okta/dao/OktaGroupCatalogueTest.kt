@@ -0,0 +1,56 @@
+package org.ccci.idm.user.okta.dao
+
+import org.ccci.idm.user.okta.OktaGroup
+import org.hamcrest.Matchers.containsInAnyOrder
+import org.hamcrest.Matchers.empty
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertThat
+import org.junit.Test
+
+class OktaGroupCatalogueTest {
+    private val root = OktaGroup(id = "1", name = "Root")
+    private val dash = OktaGroup(id = "2", name = "Root-Branch")
+    private val colon = OktaGroup(id = "3", name = "Root:Branch")
+    private val leaf = OktaGroup(id = "4", name = "Root-Branch:Leaf")
+    private val other = OktaGroup(id = "5", name = "RootOther")
+    private val groups = listOf(root, dash, colon, leaf, other)
+
+    private var loads = 0
+    private val catalogue = OktaGroupCatalogue {
+        loads++
+        groups
+    }
+
+    @Test
+    fun testGetGroup() {
+        assertEquals(leaf, catalogue.getGroup("4"))
+        assertNull(catalogue.getGroup("invalid"))
+        assertNull(catalogue.getGroup(null))
+        assertEquals(1, loads)
+    }
+
+    @Test
+    fun testGetGroupsMatchesIsDescendantOfOrEqualTo() {
+        listOf("Root", "Root-Branch", "Root:Branch", "Root-Branch:Leaf", "Root-", "Roo", "RootOther", "Missing")
+            .forEach { prefix ->
+                assertThat(prefix, catalogue.getGroups(prefix),
+                    containsInAnyOrder<OktaGroup>(*groups.filter { it.isDescendantOfOrEqualTo(prefix) }.toTypedArray()))
+            }
+        assertThat(catalogue.getGroups("Roo"), empty())
+        assertEquals(groups, catalogue.getGroups(null))
+        assertEquals(1, loads)
+    }
+
+    @Test(expected = UnsupportedOperationException::class)
+    fun testGetGroupsIsUnmodifiable() {
+        (catalogue.getGroups(null) as MutableList<OktaGroup>).clear()
+    }
+
+    @Test
+    fun testRefresh() {
+        catalogue.getGroups(null)
+        catalogue.refresh()
+        assertEquals(2, loads)
+    }
+}
@@ -0,0 +1,76 @@
+package org.ccci.idm.user.okta.dao
+
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.mock
+import com.okta.sdk.resource.ResourceException
+import org.ccci.idm.user.okta.dao.OktaRequestScheduler.Family
+import org.junit.Assert.assertEquals
+import org.junit.Assert.fail
+import org.junit.Test
+
+class OktaRequestSchedulerTest {
+    private val scheduler = OktaRequestScheduler(Family.values().associate { it to 1000.0 }, 8, 1)
+
+    @Test
+    fun testRateLimitedRequestsReduceConcurrency() {
+        assertEquals(8, scheduler.concurrencyLimit)
+
+        rateLimited()
+        assertEquals(4, scheduler.concurrencyLimit)
+        rateLimited()
+        rateLimited()
+        rateLimited()
+        assertEquals(1, scheduler.concurrencyLimit)
+
+        // successful requests slowly increase the limit again
+        repeat(3) { assertEquals("result", scheduler.execute(Family.USERS) { "result" }) }
+        assertEquals(2, scheduler.concurrencyLimit)
+    }
+
+    @Test
+    fun testOtherErrorsDontReduceConcurrency() {
+        try {
+            scheduler.execute(Family.GROUPS) { throw mock<ResourceException> { on { status } doReturn 500 } }
+            fail()
+        } catch (expected: ResourceException) {
+        }
+        assertEquals(8, scheduler.concurrencyLimit)
+    }
+
+    @Test
+    fun testPagedIteratorSchedulesPageRequests() {
+        // only the request for the next page at a page boundary is scheduled
+        val items = rateLimitedAfter(1)
+        assertEquals(1, items.next())
+        try {
+            items.hasNext()
+            fail()
+        } catch (expected: ResourceException) {
+        }
+        assertEquals(8, scheduler.concurrencyLimit)
+
+        val pages = rateLimitedAfter(2)
+        assertEquals(listOf(1, 2), pages.asSequence().take(2).toList())
+        try {
+            pages.hasNext()
+            fail()
+        } catch (expected: ResourceException) {
+        }
+        assertEquals(4, scheduler.concurrencyLimit)
+    }
+
+    private fun rateLimitedAfter(count: Int) = scheduler.pagedIterator(Family.USERS, 2, object : Iterator<Int> {
+        private var next = 1
+        override fun hasNext() =
+            if (next > count) throw mock<ResourceException> { on { status } doReturn 429 } else true
+        override fun next() = next++
+    })
+
+    private fun rateLimited() {
+        try {
+            scheduler.execute(Family.SEARCH) { throw mock<ResourceException> { on { status } doReturn 429 } }
+            fail()
+        } catch (expected: ResourceException) {
+        }
+    }
+}
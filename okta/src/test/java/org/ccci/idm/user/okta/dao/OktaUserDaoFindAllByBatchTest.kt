@@ -0,0 +1,75 @@
+package org.ccci.idm.user.okta.dao
+
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.doAnswer
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.isNull
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.stub
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.okta.sdk.resource.group.Group
+import com.okta.sdk.resource.group.GroupList
+import com.okta.sdk.resource.user.UserList
+import org.ccci.idm.user.dao.CachingUserDao
+import org.ccci.idm.user.okta.OktaGroup
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mockito.RETURNS_DEEP_STUBS
+import com.okta.sdk.resource.user.User as OktaUser
+
+class OktaUserDaoFindAllByBatchTest : BaseOktaUserDaoTest() {
+    private val users = (1..3).map { oktaUser("user$it") }
+
+    @Before
+    fun setupMocks() {
+        okta.stub {
+            on { listUsers(isNull(), isNull(), isNull(), any(), isNull()) } doAnswer {
+                mock<UserList> { on { iterator() } doReturn users.iterator() }
+            }
+        }
+    }
+
+    @Test
+    fun testBatchLookupLoadsGroups() {
+        val found = dao.findAllByTheKeyGuids(listOf("user1", "user2", "user3"), false)
+        assertEquals(setOf("user1", "user2", "user3"), found.keys)
+        found.values.forEach { assertEquals(listOf("group"), it.groups.map { group -> (group as OktaGroup).id }) }
+        verify(okta, times(1)).listUsers(isNull(), isNull(), isNull(), any(), isNull())
+    }
+
+    @Test
+    fun testBatchLookupUsesGroupMembershipCache() {
+        dao.groupMembershipCacheTtl = 60
+
+        dao.findAllByTheKeyGuids(listOf("user1", "user2", "user3"), false)
+        dao.findAllByTheKeyGuids(listOf("user1", "user2", "user3"), false)
+        users.forEach { verify(it, times(1)).listGroups() }
+    }
+
+    @Test
+    fun testSingleLookupAfterCachedBatchLookupHasGroups() {
+        val cachingDao = CachingUserDao(dao)
+
+        cachingDao.findAllByTheKeyGuids(listOf("user1", "user2", "user3"), false)
+        val user = cachingDao.findByTheKeyGuid("user1", false)!!
+        assertEquals(listOf("group"), user.groups.map { (it as OktaGroup).id })
+        verify(okta, times(1)).listUsers(isNull(), isNull(), isNull(), any(), isNull())
+    }
+
+    private fun oktaUser(guid: String) = mock<OktaUser>(defaultAnswer = RETURNS_DEEP_STUBS).apply {
+        val group = mock<Group>(defaultAnswer = RETURNS_DEEP_STUBS)
+        group.stub { on { id } doReturn "group" }
+        stub {
+            on { id } doReturn guid
+            on { listGroups() } doAnswer { mock<GroupList> { on { iterator() } doReturn listOf(group).iterator() } }
+        }
+        profile.stub {
+            on { getString("theKeyGuid") } doReturn guid
+            on { email } doReturn "$guid@example.com"
+            on { login } doReturn "$guid@example.com"
+            on { getStringList(any()) } doReturn emptyList<String>()
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.ccci.idm.user.okta.dao
+
+import com.nhaarman.mockitokotlin2.doAnswer
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.stub
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.okta.sdk.resource.group.Group
+import com.okta.sdk.resource.group.GroupList
+import org.ccci.idm.user.okta.OktaGroup
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mockito.RETURNS_DEEP_STUBS
+
+private const val GROUP_ID = "group"
+
+class OktaUserDaoGroupCatalogueTest : BaseOktaUserDaoTest() {
+    @Before
+    fun setupMocks() {
+        val group = mock<Group>(defaultAnswer = RETURNS_DEEP_STUBS)
+        group.stub { on { id } doReturn GROUP_ID }
+        okta.stub {
+            on { listGroups(null, null, null) } doAnswer {
+                mock<GroupList> { on { iterator() } doReturn listOf(group).iterator() }
+            }
+        }
+    }
+
+    @After
+    fun cleanup() {
+        dao.close()
+    }
+
+    @Test
+    fun testCatalogueIsLoadedOnFirstUse() {
+        dao.groupCatalogueRefreshInterval = 3600
+        verify(okta, never()).listGroups(null, null, null)
+
+        assertEquals(GROUP_ID, (dao.getGroup(GROUP_ID) as OktaGroup).id)
+        assertEquals(GROUP_ID, (dao.getGroup(GROUP_ID) as OktaGroup).id)
+        verify(okta, times(1)).listGroups(null, null, null)
+        verify(okta, never()).getGroup(GROUP_ID)
+    }
+
+    @Test
+    fun testCloseStopsUsingTheCatalogue() {
+        dao.groupCatalogueRefreshInterval = 3600
+        dao.getGroup(GROUP_ID)
+        dao.close()
+
+        dao.getGroup(GROUP_ID)
+        verify(okta, times(1)).listGroups(null, null, null)
+        verify(okta).getGroup(GROUP_ID)
+    }
+}
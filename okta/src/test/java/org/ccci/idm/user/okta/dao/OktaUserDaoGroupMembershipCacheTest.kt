@@ -0,0 +1,140 @@
+package org.ccci.idm.user.okta.dao
+
+import com.google.common.util.concurrent.MoreExecutors
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.anyOrNull
+import com.nhaarman.mockitokotlin2.doAnswer
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.stub
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.okta.sdk.resource.group.Group
+import com.okta.sdk.resource.group.GroupList
+import com.okta.sdk.resource.user.PasswordCredential
+import com.okta.sdk.resource.user.UserCredentials
+import com.okta.sdk.resource.user.UserList
+import org.ccci.idm.user.User
+import org.ccci.idm.user.okta.OktaGroup
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mockito.RETURNS_DEEP_STUBS
+import java.util.UUID
+import java.util.stream.Collectors
+import com.okta.sdk.resource.user.User as OktaUser
+
+private const val USER_ID = "user"
+private const val NEW_USER_ID = "newUser"
+
+class OktaUserDaoGroupMembershipCacheTest : BaseOktaUserDaoTest() {
+    @Before
+    fun setupMocks() {
+        val group = mock<Group>(defaultAnswer = RETURNS_DEEP_STUBS)
+        group.stub { on { id } doReturn "group" }
+        oktaUser.stub {
+            on { id } doReturn USER_ID
+            on { listGroups() } doAnswer { mock<GroupList> { on { iterator() } doReturn listOf(group).iterator() } }
+        }
+        oktaUser.profile.stub {
+            on { email } doReturn "user@example.com"
+            on { login } doReturn "user@example.com"
+            on { getStringList(any()) } doReturn emptyList<String>()
+        }
+        okta.stub { on { getUser(USER_ID) } doReturn oktaUser }
+        dao.groupMembershipCacheTtl = 60
+    }
+
+    @Test
+    fun testGroupMembershipsAreCached() {
+        assertEquals(listOf("group"), dao.findByOktaUserId(USER_ID)!!.groups.map { (it as OktaGroup).id })
+        assertEquals(listOf("group"), dao.findByOktaUserId(USER_ID)!!.groups.map { (it as OktaGroup).id })
+        verify(oktaUser, times(1)).listGroups()
+    }
+
+    @Test
+    fun testAddToGroupInvalidatesCache() {
+        dao.findByOktaUserId(USER_ID)
+        dao.addToGroup(User().apply { oktaUserId = USER_ID }, OktaGroup(id = "other"))
+        dao.findByOktaUserId(USER_ID)
+        verify(oktaUser, times(2)).listGroups()
+    }
+
+    @Test
+    fun testBulkLoadedMembershipsIncludeUsersWithoutGroups() {
+        setupBulkLoad()
+
+        val users = dao.streamUsers(null, false, false).collect(Collectors.toList())
+        assertEquals(emptyList<Any>(), users.single().groups.toList())
+        verify(oktaUser, never()).listGroups()
+    }
+
+    @Test
+    fun testInvalidationDuringBulkLoadIsNotOverwritten() {
+        // the user is added to a group while the member lists are being loaded
+        setupBulkLoad { dao.addToGroup(User().apply { oktaUserId = USER_ID }, OktaGroup(id = "other")) }
+
+        val users = dao.streamUsers(null, false, false).collect(Collectors.toList())
+        assertEquals(listOf("group"), users.single().groups.map { (it as OktaGroup).id })
+        verify(oktaUser, times(1)).listGroups()
+    }
+
+    @Test
+    fun testSaveInvalidatesBulkLoadedMemberships() {
+        setupBulkLoad()
+        dao.streamUsers(null, false, false).collect(Collectors.toList())
+
+        // the new user is created with initial groups and missing from the bulk loaded snapshot
+        val group = mock<Group>(defaultAnswer = RETURNS_DEEP_STUBS)
+        group.stub { on { id } doReturn "initial" }
+        val created = mock<OktaUser>(defaultAnswer = RETURNS_DEEP_STUBS)
+        created.stub {
+            on { id } doReturn NEW_USER_ID
+            on { listGroups() } doAnswer { mock<GroupList> { on { iterator() } doReturn listOf(group).iterator() } }
+        }
+        created.profile.stub {
+            on { email } doReturn "new@example.com"
+            on { login } doReturn "new@example.com"
+            on { getStringList(any()) } doReturn emptyList<String>()
+        }
+        okta.stub {
+            on { instantiate(OktaUser::class.java) } doReturn mock(defaultAnswer = RETURNS_DEEP_STUBS)
+            on { instantiate(UserCredentials::class.java) } doReturn mock()
+            on { instantiate(PasswordCredential::class.java) } doReturn mock()
+            on { createUser(any(), anyOrNull(), anyOrNull(), anyOrNull()) } doReturn created
+            on { getUser(NEW_USER_ID) } doReturn created
+        }
+        dao.save(User().apply {
+            email = "new@example.com"
+            theKeyGuid = UUID.randomUUID().toString()
+            relayGuid = theKeyGuid
+            password = "password"
+        })
+
+        assertEquals(listOf("initial"), dao.findByOktaUserId(NEW_USER_ID)!!.groups.map { (it as OktaGroup).id })
+        verify(created, times(1)).listGroups()
+    }
+
+    private fun setupBulkLoad(onListMembers: () -> Unit = {}) {
+        val otherUser = mock<com.okta.sdk.resource.user.User> { on { id } doReturn "otherUser" }
+        val otherGroup = mock<Group>(defaultAnswer = RETURNS_DEEP_STUBS)
+        otherGroup.stub {
+            on { id } doReturn "other"
+            on { listUsers() } doAnswer {
+                onListMembers()
+                mock<UserList> { on { iterator() } doReturn listOf(otherUser).iterator() }
+            }
+        }
+        okta.stub {
+            on { listGroups(null, null, null) } doAnswer {
+                mock<GroupList> { on { iterator() } doReturn listOf(otherGroup).iterator() }
+            }
+            on { listUsers(null, null, null, null, null) } doAnswer {
+                mock<UserList> { on { stream() } doReturn listOf(oktaUser).stream() }
+            }
+        }
+        dao.streamLoadGroups = true
+        dao.groupMembershipLoadExecutor = MoreExecutors.directExecutor()
+    }
+}
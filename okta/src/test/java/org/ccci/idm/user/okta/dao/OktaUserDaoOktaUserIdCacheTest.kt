@@ -0,0 +1,136 @@
+package org.ccci.idm.user.okta.dao
+
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.anyOrNull
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.doThrow
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.stub
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.nhaarman.mockitokotlin2.whenever
+import com.okta.sdk.resource.ResourceException
+import com.okta.sdk.resource.group.Group
+import com.okta.sdk.resource.user.UserList
+import com.okta.sdk.resource.user.UserProfile
+import org.ccci.idm.user.User
+import org.ccci.idm.user.okta.OktaGroup
+import org.junit.Before
+import org.junit.Test
+import java.util.UUID
+import java.util.stream.Collectors
+import com.okta.sdk.resource.user.User as OktaUser
+
+private const val USER_ID = "user"
+private const val NEW_USER_ID = "newUser"
+
+class OktaUserDaoOktaUserIdCacheTest : BaseOktaUserDaoTest() {
+    private val guid = UUID.randomUUID().toString()
+    private val user = User().apply {
+        email = "user@example.com"
+        theKeyGuid = guid
+        relayGuid = guid
+    }
+
+    @Before
+    fun setupMocks() {
+        oktaUser.stub { on { id } doReturn USER_ID }
+        oktaUser.profile.stub {
+            on { getString("theKeyGuid") } doReturn guid
+            on { email } doReturn "user@example.com"
+            on { login } doReturn "user@example.com"
+            on { getStringList(any()) } doReturn emptyList<String>()
+        }
+        okta.stub { on { getUser(USER_ID) } doReturn oktaUser }
+        dao.loadGroups = false
+    }
+
+    @Test
+    fun testUpdateUsesCachedOktaUserId() {
+        dao.findByOktaUserId(USER_ID)
+        dao.update(user, User.Attr.NAME)
+
+        verify(okta, times(2)).getUser(USER_ID)
+        verify(okta, never()).listUsers(anyOrNull(), anyOrNull(), anyOrNull(), anyOrNull(), anyOrNull())
+        verify(oktaUser).update()
+    }
+
+    @Test
+    fun testStreamedUsersAreNotCached() {
+        okta.stub {
+            on { listUsers(null, null, null, null, null) } doReturn
+                mock<UserList> { on { stream() } doReturn listOf(oktaUser).stream() }
+            on { listUsers(null, null, null, "profile.theKeyGuid eq \"$guid\"", null) } doReturn
+                mock<UserList> { on { iterator() } doReturn listOf(oktaUser).iterator() }
+        }
+
+        dao.streamUsers(null, false, false).collect(Collectors.toList())
+        dao.update(user, User.Attr.NAME)
+
+        verify(okta).listUsers(null, null, null, "profile.theKeyGuid eq \"$guid\"", null)
+        verify(okta, never()).getUser(USER_ID)
+        verify(oktaUser).update()
+    }
+
+    @Test
+    fun testPartialProfileUpdate() {
+        val partialProfile = mock<UserProfile>()
+        val partial = mock<OktaUser>()
+        okta.stub {
+            on { instantiate(OktaUser::class.java) } doReturn partial
+            on { instantiate(UserProfile::class.java) } doReturn partialProfile
+        }
+        dao.partialProfileUpdates = true
+
+        dao.findByOktaUserId(USER_ID)
+        user.telephoneNumber = "555-1234"
+        dao.update(user, User.Attr.CONTACT)
+
+        verify(okta, times(1)).getUser(USER_ID)
+        verify(partialProfile).putAll(mapOf("primaryPhone" to "555-1234"))
+        verify(partial).profile = partialProfile
+        verify(okta).save("/api/v1/users/$USER_ID", partial)
+        verify(oktaUser, never()).update()
+    }
+
+    @Test
+    fun testPartialProfileUpdateRetriesStaleCachedOktaUserId() {
+        val partial = mock<OktaUser>()
+        okta.stub {
+            on { instantiate(OktaUser::class.java) } doReturn partial
+            on { instantiate(UserProfile::class.java) } doReturn mock<UserProfile>()
+        }
+        doThrow(notFound()).whenever(okta).save("/api/v1/users/$USER_ID", partial)
+        setupSearch()
+        dao.partialProfileUpdates = true
+
+        dao.findByOktaUserId(USER_ID)
+        dao.update(user, User.Attr.CONTACT)
+
+        verify(okta).save("/api/v1/users/$NEW_USER_ID", partial)
+    }
+
+    @Test
+    fun testRemoveFromGroupRetriesStaleCachedOktaUserId() {
+        val group = mock<Group>()
+        okta.stub { on { getGroup("group") } doReturn group }
+        doThrow(notFound()).whenever(group).removeUser(USER_ID)
+        setupSearch()
+
+        dao.findByOktaUserId(USER_ID)
+        dao.removeFromGroup(user, OktaGroup(id = "group"))
+
+        verify(group).removeUser(NEW_USER_ID)
+    }
+
+    private fun setupSearch() {
+        val found = mock<OktaUser> { on { id } doReturn NEW_USER_ID }
+        okta.stub {
+            on { listUsers(null, null, null, "profile.theKeyGuid eq \"$guid\"", null) } doReturn
+                mock<UserList> { on { iterator() } doReturn listOf(found).iterator() }
+        }
+    }
+
+    private fun notFound() = mock<ResourceException> { on { status } doReturn 404 }
+}
@@ -0,0 +1,126 @@
+package org.ccci.idm.user.okta.dao
+
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.anyOrNull
+import com.nhaarman.mockitokotlin2.doAnswer
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.isNull
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.stub
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.okta.sdk.resource.group.GroupList
+import com.okta.sdk.resource.user.UserList
+import org.ccci.idm.user.okta.OktaGroup
+import org.ccci.idm.user.query.Attribute
+import org.hamcrest.Matchers.contains
+import org.junit.Assert.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mockito.RETURNS_DEEP_STUBS
+import java.util.stream.Collectors
+import com.okta.sdk.resource.group.Group as OktaGroupResource
+import com.okta.sdk.resource.user.User as OktaUser
+
+private const val GROUP_ID = "group"
+
+class OktaUserDaoStreamUsersInGroupTest : BaseOktaUserDaoTest() {
+    private val group = OktaGroup(id = GROUP_ID)
+    private lateinit var oktaGroup: OktaGroupResource
+    private lateinit var member: OktaUser
+    private lateinit var nonMember: OktaUser
+
+    @Before
+    fun setupMocks() {
+        member = oktaUser("member", GROUP_ID)
+        nonMember = oktaUser("nonMember", "other")
+        oktaGroup = mock {
+            on { id } doReturn GROUP_ID
+            on { listUsers() } doReturn userList(member)
+        }
+        okta.stub {
+            on { getGroup(GROUP_ID) } doReturn oktaGroup
+            on { listUsers(isNull(), isNull(), isNull(), any(), isNull()) } doReturn userList(member, nonMember)
+        }
+        dao.groupSearchPushDown = true
+    }
+
+    @Test
+    fun testSearchPushDown() {
+        val users = dao.streamUsersInGroup(group, Attribute.LAST_NAME.eq("Doe"), false, false)
+            .map { it.oktaUserId }.collect(Collectors.toList())
+
+        assertThat(users, contains("member"))
+        verify(okta).listUsers(null, null, null, "profile.lastName eq \"Doe\"", null)
+        verify(oktaGroup, never()).listUsers()
+    }
+
+    @Test
+    fun testSearchPushDownUsesCachedMemberships() {
+        okta.stub {
+            on { listUsers(isNull(), isNull(), isNull(), any(), isNull()) } doAnswer { userList(member, nonMember) }
+        }
+        dao.groupMembershipCacheTtl = 60
+
+        repeat(2) {
+            val users = dao.streamUsersInGroup(group, Attribute.LAST_NAME.eq("Doe"), false, false)
+                .map { it.oktaUserId }.collect(Collectors.toList())
+            assertThat(users, contains("member"))
+        }
+        verify(member, times(1)).listGroups()
+        verify(nonMember, times(1)).listGroups()
+    }
+
+    @Test
+    fun testSearchPushDownLoadsGroups() {
+        dao.streamLoadGroups = true
+
+        val users = dao.streamUsersInGroup(group, Attribute.LAST_NAME.eq("Doe"), false, false)
+            .collect(Collectors.toList())
+        assertThat(users.single().groups.map { (it as OktaGroup).id }, contains(GROUP_ID))
+        verify(member, times(1)).listGroups()
+        verify(oktaGroup, never()).listUsers()
+    }
+
+    @Test
+    fun testFallbackWhenTooManyCandidates() {
+        dao.groupSearchCandidateLimit = 1
+
+        val users = dao.streamUsersInGroup(group, Attribute.LAST_NAME.eq("Doe"), false, false)
+            .map { it.oktaUserId }.collect(Collectors.toList())
+
+        assertThat(users, contains("member"))
+        verify(oktaGroup).listUsers()
+    }
+
+    @Test
+    fun testFallbackForUnsearchableExpression() {
+        val users = dao.streamUsersInGroup(group, Attribute.LAST_NAME.like("D*"), false, false)
+            .map { it.oktaUserId }.collect(Collectors.toList())
+
+        assertThat(users, contains("member"))
+        verify(okta, never()).listUsers(anyOrNull(), anyOrNull(), anyOrNull(), anyOrNull(), anyOrNull())
+    }
+
+    private fun oktaUser(id: String, groupId: String): OktaUser {
+        val groups = mock<OktaGroupResource> { on { this.id } doReturn groupId }
+        return mock<OktaUser>(defaultAnswer = RETURNS_DEEP_STUBS).apply {
+            stub {
+                on { this.id } doReturn id
+                on { listGroups() } doReturn mock<GroupList> { on { iterator() } doReturn listOf(groups).iterator() }
+            }
+            profile.stub {
+                on { email } doReturn "$id@example.com"
+                on { login } doReturn "$id@example.com"
+                on { lastName } doReturn "Doe"
+                on { getStringList(any()) } doReturn emptyList<String>()
+            }
+        }
+    }
+
+    private fun userList(vararg users: OktaUser) = mock<UserList> {
+        on { iterator() } doReturn users.toList().iterator()
+        on { stream() } doReturn users.toList().stream()
+    }
+}
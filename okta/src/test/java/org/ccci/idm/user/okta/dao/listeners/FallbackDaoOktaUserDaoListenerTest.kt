@@ -0,0 +1,29 @@
+package org.ccci.idm.user.okta.dao.listeners
+
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.verify
+import org.ccci.idm.user.User
+import org.ccci.idm.user.dao.UserDao
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class FallbackDaoOktaUserDaoListenerTest {
+    @Test
+    fun testOnUsersLoadedUsesBatchLookup() {
+        val users = listOf(User().apply { theKeyGuid = "a" }, User().apply { theKeyGuid = "b" })
+        val dao = mock<UserDao> {
+            on { findAllByTheKeyGuids(any(), any()) } doReturn mapOf("a" to User().apply { signupKey = "key" })
+        }
+
+        FallbackDaoOktaUserDaoListener(dao).onUsersLoaded(users)
+
+        verify(dao).findAllByTheKeyGuids(listOf("a", "b"), true)
+        verify(dao, never()).findByTheKeyGuid(any(), any())
+        assertEquals("key", users[0].signupKey)
+        assertNull(users[1].signupKey)
+    }
+}
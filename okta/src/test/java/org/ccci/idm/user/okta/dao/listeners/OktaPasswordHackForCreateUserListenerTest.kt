@@ -0,0 +1,153 @@
+package org.ccci.idm.user.okta.dao.listeners
+
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.anyOrNull
+import com.nhaarman.mockitokotlin2.argumentCaptor
+import com.nhaarman.mockitokotlin2.doAnswer
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.doThrow
+import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.stub
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.okta.authn.sdk.client.AuthenticationClient
+import org.ccci.idm.user.User
+import org.junit.Assert.assertEquals
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+class OktaPasswordHackForCreateUserListenerTest {
+    private lateinit var authClient: AuthenticationClient
+    private lateinit var executor: ScheduledExecutorService
+    private lateinit var listener: OktaPasswordHackForCreateUserListener
+
+    // tasks scheduled on the executor with their delay, they are only run when the test runs them
+    private val tasks = mutableListOf<Pair<Runnable, Long>>()
+
+    private val user = User().apply {
+        email = "user@example.com"
+        password = "password"
+    }
+
+    @Before
+    fun setup() {
+        authClient = mock()
+        executor = mock {
+            on { schedule(any<Runnable>(), any(), eq(TimeUnit.MILLISECONDS)) } doAnswer {
+                tasks.add(it.getArgument<Runnable>(0) to it.getArgument<Long>(1))
+                mock<ScheduledFuture<*>>()
+            }
+        }
+        listener = OktaPasswordHackForCreateUserListener(authClient, 100, executor)
+    }
+
+    @Test
+    fun testAuthenticationIsDeferred() {
+        listener.onUserCreated(user)
+        verify(authClient, never()).authenticate(any(), any(), anyOrNull(), anyOrNull())
+        assertEquals(listOf(100L), tasks.map { it.second })
+        assertEquals(1L, listener.scheduledCount)
+
+        runTasks()
+        verify(authClient).authenticate(eq("user@example.com"), any(), anyOrNull(), anyOrNull())
+        assertEquals(0, listener.pendingCount)
+        assertEquals(1L, listener.succeededCount)
+    }
+
+    @Test
+    fun testPasswordIsClearedAfterAuthentication() {
+        listener.onUserCreated(user)
+        runTasks()
+
+        argumentCaptor<CharArray>().apply {
+            verify(authClient).authenticate(any(), capture(), anyOrNull(), anyOrNull())
+            assertEquals(String(CharArray(8)), String(firstValue))
+        }
+        assertEquals("password", user.password)
+    }
+
+    @Test
+    fun testAuthenticationIsRetried() {
+        authClient.stub {
+            on { authenticate(any(), any(), anyOrNull(), anyOrNull()) } doThrow IllegalStateException() doReturn mock()
+        }
+
+        listener.onUserCreated(user)
+        runTasks()
+        assertEquals(listOf(100L, 200L), tasks.map { it.second })
+        assertEquals(0, listener.pendingCount)
+        assertEquals(1L, listener.retriedCount)
+        assertEquals(1L, listener.succeededCount)
+        assertEquals(0L, listener.failedCount)
+    }
+
+    @Test
+    fun testAuthenticationFailsAfterMaxAttempts() {
+        authClient.stub { on { authenticate(any(), any(), anyOrNull(), anyOrNull()) } doThrow IllegalStateException() }
+        listener.maxAttempts = 2
+
+        listener.onUserCreated(user)
+        runTasks()
+        argumentCaptor<CharArray>().apply {
+            verify(authClient, times(2)).authenticate(any(), capture(), anyOrNull(), anyOrNull())
+            assertEquals(String(CharArray(8)), String(lastValue))
+        }
+        assertEquals(0, listener.pendingCount)
+        assertEquals(1L, listener.retriedCount)
+        assertEquals(1L, listener.failedCount)
+    }
+
+    @Test
+    fun testRejectedScheduleCountsAsFailed() {
+        executor.stub { on { schedule(any<Runnable>(), any(), any()) } doThrow RejectedExecutionException() }
+
+        listener.onUserCreated(user)
+        verify(authClient, never()).authenticate(any(), any(), anyOrNull(), anyOrNull())
+        assertEquals(0, listener.pendingCount)
+        assertEquals(1L, listener.failedCount)
+    }
+
+    @Test
+    fun testAuthenticateInlineWhenQueueIsFull() {
+        listener.maxPending = 0
+
+        listener.onUserCreated(user)
+        verify(authClient).authenticate(eq("user@example.com"), any(), anyOrNull(), anyOrNull())
+        assertEquals(1L, listener.inlineCount)
+        assertEquals(0L, listener.scheduledCount)
+    }
+
+    @Test
+    fun testInlineAuthenticationFailureIsCounted() {
+        authClient.stub { on { authenticate(any(), any(), anyOrNull(), anyOrNull()) } doThrow IllegalStateException() }
+        listener.maxPending = 0
+
+        try {
+            listener.onUserCreated(user)
+            fail("the inline authentication failure should be thrown")
+        } catch (expected: IllegalStateException) {
+        }
+        assertEquals(1L, listener.inlineCount)
+        assertEquals(1L, listener.failedCount)
+        assertEquals(0L, listener.succeededCount)
+    }
+
+    @Test
+    fun testCloseLeavesProvidedExecutorRunning() {
+        listener.close()
+        verify(executor, never()).shutdown()
+        verify(executor, never()).shutdownNow()
+    }
+
+    private fun runTasks() {
+        var i = 0
+        while (i < tasks.size) tasks[i++].first.run()
+    }
+}
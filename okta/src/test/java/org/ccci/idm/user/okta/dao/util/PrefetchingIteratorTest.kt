@@ -0,0 +1,56 @@
+package org.ccci.idm.user.okta.dao.util
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class PrefetchingIteratorTest {
+    private val executor = Executors.newCachedThreadPool()
+
+    @After
+    fun shutdown() {
+        executor.shutdownNow()
+    }
+
+    @Test
+    fun testIteration() {
+        val iterator = PrefetchingIterator((1..100).iterator(), 10, executor)
+        assertEquals((1..100).toList(), iterator.asSequence().toList())
+        assertFalse(iterator.hasNext())
+    }
+
+    @Test
+    fun testPrefetchesAhead() {
+        val produced = CountDownLatch(5)
+        val source = generateSequence(1) { it + 1 }.take(10).onEach { produced.countDown() }.iterator()
+
+        PrefetchingIterator(source, 5, executor).use { iterator ->
+            assertEquals(1, iterator.next())
+            // the producer fills the buffer without the consumer requesting more items
+            assertTrue(produced.await(5, TimeUnit.SECONDS))
+        }
+    }
+
+    @Test
+    fun testFailurePropagates() {
+        val source = sequence {
+            yield(1)
+            throw IllegalStateException()
+        }.iterator()
+
+        val iterator = PrefetchingIterator(source, 5, executor)
+        assertEquals(1, iterator.next())
+        try {
+            iterator.hasNext()
+            fail()
+        } catch (expected: IllegalStateException) {
+        }
+        assertFalse(iterator.hasNext())
+    }
+}